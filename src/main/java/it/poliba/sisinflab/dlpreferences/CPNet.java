@@ -1,5 +1,8 @@
 package it.poliba.sisinflab.dlpreferences;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import it.poliba.sisinflab.dlpreferences.except.SnapshotFormatException;
 import it.poliba.sisinflab.dlpreferences.except.SpecFileParseException;
 import it.poliba.sisinflab.dlpreferences.nusmv.NuSMVModelGenerator;
 import it.poliba.sisinflab.dlpreferences.nusmv.NuSMVRunner;
@@ -11,7 +14,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
@@ -24,11 +30,24 @@ public class CPNet {
     private NuSMVRunner nusmvRunner;
     // A hierarchical structure of preference variables.
     PreferenceGraph graph;
+    // The SHA-256 digest of each source file, recorded in snapshots.
+    Map<Path, String> sources;
 
     CPNet(CPNet n) {
         baseModel = n.baseModel;
         nusmvRunner = n.nusmvRunner;
         graph = n.graph;
+        sources = n.sources;
+    }
+
+    /**
+     * Reads the preference graph and the base NuSMV model from a snapshot.
+     */
+    CPNet(Snapshot.Reader reader, Map<Path, String> sources, NuSMVRunner nusmvRunner) throws SnapshotFormatException {
+        graph = PreferenceGraph.read(reader);
+        baseModel = ImmutableList.copyOf(reader.readStrings());
+        this.nusmvRunner = nusmvRunner;
+        this.sources = sources;
     }
 
     /**
@@ -51,16 +70,88 @@ public class CPNet {
      */
     public CPNet(Path xmlPrefSpec, Path nusmvExecutable)
             throws SpecFileParseException, IOException {
-        // Parse the XML input file.
-        PreferenceSpecification prefSpec =
-                CPTheoryToSMVTranslator.parsePreferenceSpecification(
-                        xmlPrefSpec.toAbsolutePath().toString());
-        // Build and test the base NuSMV model.
         nusmvRunner = new NuSMVRunner(nusmvExecutable);
-        baseModel = NuSMVModelGenerator.baseModel(prefSpec);
-        nusmvRunner.verify(baseModel);
-        // Build the preference graph.
-        graph = PreferenceGraph.fromCrisnerSpec(prefSpec);
+        // Parse the XML input file, building the preference graph and the base NuSMV model in a single pass.
+        // Specifications that the streaming reader does not support are parsed by CRISNER.
+        Optional<StaxSpecReader.Result> result = StaxSpecReader.read(xmlPrefSpec);
+        if (result.isPresent()) {
+            graph = result.get().getGraph();
+            baseModel = result.get().getBaseModel();
+        } else {
+            PreferenceSpecification prefSpec =
+                    CPTheoryToSMVTranslator.parsePreferenceSpecification(
+                            xmlPrefSpec.toAbsolutePath().toString());
+            baseModel = NuSMVModelGenerator.baseModel(prefSpec);
+            graph = PreferenceGraph.fromCrisnerSpec(prefSpec);
+        }
+        // Test the base NuSMV model.
+        nusmvRunner.verifyCached(baseModel);
+        sources = ImmutableMap.of(xmlPrefSpec.toAbsolutePath(), Snapshot.digest(xmlPrefSpec));
+    }
+
+    /**
+     * Saves this CP-net as a binary snapshot, which can be read by {@link #load(Path, Path)}
+     * without parsing the preference specification or verifying the NuSMV model again.
+     * The snapshot also records the SHA-256 digest of the preference specification file,
+     * which is checked by {@link #isSnapshotCurrent(Path)}.
+     * The snapshot of an {@link OntologicalCPNet} also contains its closure and its constrained ontology,
+     * and can be read by {@link OntologicalCPNet#load(Path, Path)}.
+     * <p>
+     * The snapshot is written into a temporary file in the same directory, which then replaces <code>snapshot</code>.
+     *
+     * @param snapshot the snapshot file
+     * @throws IOException if an I/O error occurs while writing the snapshot
+     */
+    public void save(Path snapshot) throws IOException {
+        try (Snapshot.Writer writer = Snapshot.Writer.create(snapshot, snapshotKind(), sources)) {
+            writeSnapshot(writer);
+            writer.commit();
+        }
+    }
+
+    /**
+     * Loads a CP-net from a snapshot written by {@link #save(Path)}.
+     * If the snapshot contains an ontological CP-net, only its CP-net is loaded;
+     * see {@link OntologicalCPNet#load(Path, Path)}.
+     *
+     * @param snapshot the snapshot file
+     * @param nusmvExecutable the NuSMV executable file
+     * @return
+     * @throws SnapshotFormatException if <code>snapshot</code> is not a valid snapshot, or has a different version
+     * @throws FileNotFoundException if any {@link Path} argument is invalid
+     * @throws IOException if an I/O error occurs while reading the snapshot
+     */
+    public static CPNet load(Path snapshot, Path nusmvExecutable) throws IOException {
+        try (Snapshot.Reader reader = Snapshot.Reader.open(snapshot)) {
+            Snapshot.Kind kind = reader.readKind();
+            Map<Path, String> sources = reader.readSources();
+            CPNet cpnet = new CPNet(reader, sources, new NuSMVRunner(nusmvExecutable));
+            if (kind == Snapshot.Kind.CPNET) {
+                reader.requireEnd();
+            }
+            return cpnet;
+        }
+    }
+
+    /**
+     * Checks whether a snapshot can be loaded in place of its source files,
+     * that is whether it has the current format version and its source files are unchanged.
+     *
+     * @param snapshot the snapshot file
+     * @return
+     * @throws IOException if an I/O error occurs while reading the snapshot or its source files
+     */
+    public static boolean isSnapshotCurrent(Path snapshot) throws IOException {
+        return Snapshot.isCurrent(snapshot);
+    }
+
+    Snapshot.Kind snapshotKind() {
+        return Snapshot.Kind.CPNET;
+    }
+
+    void writeSnapshot(Snapshot.Writer writer) throws IOException {
+        graph.write(writer);
+        writer.writeStrings(baseModel);
     }
 
     public PreferenceGraph getPreferenceGraph() {
@@ -91,4 +182,39 @@ public class CPNet {
         return nusmvRunner.verify(dominanceModel);
     }
 
+    /**
+     * Performs a dominance check in the CP-net conditioned on the specified assignments,
+     * that is, considering only the outcomes that agree with <code>assignments</code>.
+     * Both arguments must agree with <code>assignments</code>.
+     *
+     * <p>If the assigned variables include every descendant of each other, where the variables that are
+     * less important than a variable count as its descendants (see {@link PreferenceGraph#descendantClosedSubset(Set)}),
+     * the result is the same as {@link #dominates(Outcome, Outcome)}: flipping an assigned variable
+     * only changes assigned variables and never makes another flip improving,
+     * so the flips of assigned variables can be dropped from any improving flipping sequence.
+     *
+     * @param better
+     * @param worse
+     * @param assignments a <code>Map</code> from variable names to domain values
+     * @return <code>true</code> if <code>better</code> is preferred to <code>worse</code>;
+     * <code>false</code> otherwise.
+     * @throws NullPointerException if any argument is <code>null</code>
+     */
+    boolean dominates(Outcome better, Outcome worse, Map<String, String> assignments) {
+        Objects.requireNonNull(better);
+        Objects.requireNonNull(worse);
+        Optional<String> invariant = NuSMVModelGenerator.invariantSpec(assignments);
+        if (!invariant.isPresent()) {
+            return dominates(better, worse);
+        }
+        if (better.equals(worse)) {
+            return false;
+        }
+        // Add the invariant and the dominance specification to the base NuSMV model.
+        Stream<String> dominanceModel = Stream.concat(
+                baseModel.stream(),
+                Stream.of(invariant.get(), NuSMVModelGenerator.dominanceSpec(better, worse)));
+        return nusmvRunner.verify(dominanceModel);
+    }
+
 }
\ No newline at end of file
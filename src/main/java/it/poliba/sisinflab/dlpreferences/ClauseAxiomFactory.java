@@ -0,0 +1,88 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import it.poliba.sisinflab.dlpreferences.sat.DimacsLiterals;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Translates DIMACS clauses into OWL axioms, reusing a single {@link OWLClass}
+ * and a single {@link OWLObjectComplementOf} for each DIMACS literal.
+ *
+ * <p>The class expressions are created once, when this object is constructed, so that the translation
+ * of a clause only allocates its union and its axiom. The axioms are the same as those obtained from
+ * {@link Constraint#asAxiom(OWLDataFactory, org.semanticweb.owlapi.rdf.rdfxml.parser.IRIProvider)}
+ * for the {@link FeasibilityConstraint} of the clause.
+ *
+ * <p>Instances of this class are immutable, and can be shared among threads.
+ */
+final class ClauseAxiomFactory {
+    private OWLDataFactory dataFactory;
+
+    /**
+     * The class of each positive DIMACS literal; the element at index 0 is unused.
+     */
+    private OWLClass[] classes;
+
+    /**
+     * The complement of the class of each positive DIMACS literal; the element at index 0 is unused.
+     */
+    private OWLObjectComplementOf[] complements;
+
+    /**
+     * @param dataFactory
+     * @param maxLiteral the highest DIMACS literal
+     * @param iriOf the function that maps each positive DIMACS literal to the <code>IRI</code> of its class
+     */
+    ClauseAxiomFactory(OWLDataFactory dataFactory, int maxLiteral, IntFunction<IRI> iriOf) {
+        this.dataFactory = Objects.requireNonNull(dataFactory);
+        classes = new OWLClass[maxLiteral + 1];
+        complements = new OWLObjectComplementOf[maxLiteral + 1];
+        for (int literal = 1; literal <= maxLiteral; literal++) {
+            classes[literal] = dataFactory.getOWLClass(iriOf.apply(literal));
+            complements[literal] = dataFactory.getOWLObjectComplementOf(classes[literal]);
+        }
+    }
+
+    /**
+     * Returns the class of the specified positive DIMACS literal.
+     * @param literal
+     * @return
+     * @throws ArrayIndexOutOfBoundsException if the literal is not positive, or it is out of range
+     */
+    OWLClass getOWLClass(int literal) {
+        if (literal <= 0) {
+            throw new ArrayIndexOutOfBoundsException(literal);
+        }
+        return classes[literal];
+    }
+
+    /**
+     * Returns the class expression of the specified DIMACS literal:
+     * a class if the literal is positive, or its complement if the literal is negative.
+     * @param literal
+     * @return
+     */
+    OWLClassExpression getExpression(int literal) {
+        return literal > 0 ? classes[literal] : complements[-literal];
+    }
+
+    /**
+     * Translates a clause into the axiom
+     * <pre>{@code SubClassOf(owl:Thing, ObjectUnionOf(X, Y, ...))}</pre>
+     * or into <code>SubClassOf(owl:Thing, owl:Nothing)</code> if the clause is empty.
+     * @param clause
+     * @return
+     */
+    OWLSubClassOfAxiom clauseAxiom(DimacsLiterals clause) {
+        OWLClassExpression[] operands = clause.stream()
+                .mapToObj(this::getExpression)
+                .toArray(OWLClassExpression[]::new);
+        OWLClassExpression rightSide = operands.length > 0 ?
+                dataFactory.getOWLObjectUnionOf(Arrays.stream(operands)) :
+                dataFactory.getOWLNothing();
+        return dataFactory.getOWLSubClassOfAxiom(dataFactory.getOWLThing(), rightSide);
+    }
+}
@@ -0,0 +1,122 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import java.util.Arrays;
+
+/**
+ * An insertion-ordered set of outcomes encoded by an {@link OutcomeCodec}.
+ *
+ * <p>Encoded outcomes are stored contiguously in a single <code>long[]</code>, and indexed by
+ * an open-addressing hash table of positions, so that no object is allocated per outcome.
+ * The outcome at position <code>i</code> occupies the words
+ * <code>codes()[i * width] .. codes()[(i + 1) * width - 1]</code>.
+ */
+final class CompactOutcomeSet {
+    private int width;
+    private long[] codes;
+    private int size;
+
+    /**
+     * The hash table: each slot holds the position of an outcome plus one, or zero if empty.
+     */
+    private int[] index;
+
+    /**
+     * @param width the number of words of each encoded outcome
+     */
+    CompactOutcomeSet(int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("non-positive width: " + width);
+        }
+        this.width = width;
+        codes = new long[16 * width];
+        index = new int[32];
+    }
+
+    /**
+     * Adds the outcome encoded in the first {@link OutcomeCodec#width()} words of <code>code</code>.
+     * @param code
+     * @return <code>true</code> if the outcome was not already in this set
+     */
+    boolean add(long[] code) {
+        int slot = find(code, 0);
+        if (index[slot] != 0) {
+            return false;
+        }
+        if ((size + 1) * width > codes.length) {
+            codes = Arrays.copyOf(codes, 2 * codes.length);
+        }
+        System.arraycopy(code, 0, codes, size * width, width);
+        index[slot] = ++size;
+        if (2 * size > index.length) {
+            rehash(2 * index.length);
+        }
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if this set contains the outcome stored in <code>codes</code>
+     * at the specified offset.
+     * @param codes
+     * @param offset
+     * @return
+     */
+    boolean contains(long[] codes, int offset) {
+        return index[find(codes, offset)] != 0;
+    }
+
+    /**
+     * Returns the backing array of encoded outcomes; only the first <code>size() * width</code>
+     * words are meaningful, and the array must not be modified.
+     * @return
+     */
+    long[] codes() {
+        return codes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot that holds the specified outcome, or the empty slot where it would be inserted.
+     */
+    private int find(long[] code, int offset) {
+        int mask = index.length - 1;
+        for (int slot = hash(code, offset) & mask; ; slot = (slot + 1) & mask) {
+            int position = index[slot];
+            if (position == 0 || equals(position - 1, code, offset)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean equals(int position, long[] code, int offset) {
+        int start = position * width;
+        for (int word = 0; word < width; word++) {
+            if (codes[start + word] != code[offset + word]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(long[] code, int offset) {
+        long hash = 0;
+        for (int word = 0; word < width; word++) {
+            hash = (hash + code[offset + word]) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private void rehash(int capacity) {
+        index = new int[capacity];
+        int mask = capacity - 1;
+        for (int position = 0; position < size; position++) {
+            int slot = hash(codes, position * width) & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = position + 1;
+        }
+    }
+}
@@ -7,7 +7,9 @@ import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
 import org.semanticweb.owlapi.rdf.rdfxml.parser.IRIProvider;
 
 import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Stream;
@@ -24,8 +26,20 @@ public class ConstraintSet<T extends Constraint>
     private ModelConverter converter;
     private OWLDataFactory owlDataFactory;
 
+    /**
+     * The DIMACS clause of each constraint, in iteration order; compiled on first use.
+     */
+    private volatile DimacsLiterals[] compiledClauses;
+
+    /**
+     * The compiled clauses, stored as a formula; compiled on first use.
+     */
+    private volatile BooleanFormula compiledFormula;
+
     /**
      * Constructs a new <code>ConstraintSet</code> backed by the specified <code>Set</code>.
+     * The clauses of the constraints are compiled once, when first needed,
+     * so the backing set must not change afterwards.
      * @param constraints
      * @param converter
      * @param owlDataFactory
@@ -39,6 +53,26 @@ public class ConstraintSet<T extends Constraint>
         this.owlDataFactory = Objects.requireNonNull(owlDataFactory);
     }
 
+    /**
+     * Constructs a new <code>ConstraintSet</code> backed by the specified <code>Set</code>,
+     * whose clauses have already been compiled, for example by a previous instance.
+     * @param constraints
+     * @param clauses the DIMACS clause of each constraint, in the iteration order of <code>constraints</code>
+     * @param converter
+     * @param owlDataFactory
+     * @throws IllegalArgumentException if the number of clauses differs from the number of constraints
+     */
+    ConstraintSet(Set<T> constraints,
+                  List<DimacsLiterals> clauses,
+                  ModelConverter converter,
+                  OWLDataFactory owlDataFactory) {
+        this(constraints, converter, owlDataFactory);
+        if (clauses.size() != constraints.size()) {
+            throw new IllegalArgumentException("one clause is required for each constraint");
+        }
+        compiledClauses = clauses.toArray(new DimacsLiterals[0]);
+    }
+
     /**
      * @return
      * @see Constraint#asAxiom(OWLDataFactory, IRIProvider)
@@ -54,7 +88,40 @@ public class ConstraintSet<T extends Constraint>
      * @see BooleanFormula#toSynchronizedFormula()
      */
     public Stream<DimacsLiterals> clauses() {
-        return stream().map(constraint -> constraint.asClause(converter));
+        return Arrays.stream(compiledClauses());
+    }
+
+    /**
+     * Converts this set of ontological constraints into a boolean formula.
+     * The returned formula is a copy of the cached compiled formula, and may be modified by the caller.
+     * @return
+     * @see Constraint#asClause(DimacsProvider)
+     */
+    public BooleanFormula toFormula() {
+        BooleanFormula formula = compiledFormula;
+        if (formula == null) {
+            formula = BooleanFormula.empty();
+            for (DimacsLiterals clause : compiledClauses()) {
+                formula.addClause(clause);
+            }
+            compiledFormula = formula;
+        }
+        return BooleanFormula.copyOf(formula);
+    }
+
+    /**
+     * Returns the DIMACS clause of each constraint, converting the constraints on first use.
+     * Concurrent first uses may convert the constraints more than once, with the same result.
+     */
+    private DimacsLiterals[] compiledClauses() {
+        DimacsLiterals[] clauses = compiledClauses;
+        if (clauses == null) {
+            clauses = constraints.stream()
+                    .map(constraint -> constraint.asClause(converter))
+                    .toArray(DimacsLiterals[]::new);
+            compiledClauses = clauses;
+        }
+        return clauses;
     }
 
     @Override
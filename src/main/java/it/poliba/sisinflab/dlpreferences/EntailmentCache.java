@@ -0,0 +1,191 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * A thread-safe cache of entailment checks, which can be shared by many {@link OntologicalCPNet}s.
+ *
+ * <p>Entries are content-addressed: the key of an entailment check is the SHA-256 hash of the axiom being checked
+ * and of an <em>ontology key</em>, which identifies the constrained ontology by its content
+ * and the reasoner by the class and name of its factory.
+ * The ontology key is made of the hash of the constrained ontology or, for the overlays of a
+ * {@link ProviderContext}, of the hash of the provider ontology and the axioms generated from
+ * the preference definitions, that is the class definitions and partitions of all domain values.
+ * Therefore, two ontological CP-nets share entries if and only if they use the same reasoner
+ * and have the same base ontology, domain values and preference definitions,
+ * regardless of the order in which they were added;
+ * OWL objects are compared through their structural rendering, in which the operands of
+ * intersections, unions and n-ary axioms are sorted.
+ *
+ * <p>The least recently used entries are evicted once the in-memory cache is full.
+ * An optional disk tier stores each entry as a one-byte file, named after its key, in a given directory;
+ * disk entries are never evicted, so the directory must be deleted to clear them.
+ */
+public final class EntailmentCache {
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final byte TRUE = '1';
+    private static final byte FALSE = '0';
+
+    private static final EntailmentCache SHARED = new EntailmentCache(DEFAULT_CAPACITY, null);
+
+    private final Cache<String, Boolean> memory;
+    private final Path directory;
+
+    private EntailmentCache(int capacity, Path directory) {
+        memory = CacheBuilder.newBuilder().maximumSize(capacity).build();
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the in-memory cache used by ontological CP-nets, unless another cache is set
+     * with {@link OntologicalCPNet.Builder#withEntailmentCache(EntailmentCache)}.
+     * @return
+     */
+    public static EntailmentCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Creates an in-memory cache.
+     * @param capacity the maximum number of entries
+     * @return
+     * @throws IllegalArgumentException if <code>capacity</code> is not positive
+     */
+    public static EntailmentCache inMemory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        return new EntailmentCache(capacity, null);
+    }
+
+    /**
+     * Creates a cache backed by a directory, which may be shared by several processes.
+     * @param capacity the maximum number of entries kept in memory
+     * @param directory an existing, writable directory
+     * @return
+     * @throws IllegalArgumentException if <code>capacity</code> is not positive
+     * @throws FileNotFoundException if <code>directory</code> is not an existing, writable directory
+     */
+    public static EntailmentCache withDiskTier(int capacity, Path directory) throws FileNotFoundException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (!Files.isDirectory(directory) || !Files.isWritable(directory)) {
+            throw new FileNotFoundException(directory.toString());
+        }
+        return new EntailmentCache(capacity, directory);
+    }
+
+    /**
+     * Computes the hash of the axioms of an ontology, including its imports.
+     * @param ontology
+     * @return
+     */
+    static String ontologyHash(OWLOntology ontology) {
+        return hash(ontology.importsClosure().flatMap(OWLOntology::axioms).map(Object::toString).sorted());
+    }
+
+    /**
+     * Computes an ontology key from the hash of a base ontology and the axioms added to it.
+     * Reasoners may disagree on entailments they do not support, so the key also identifies the reasoner.
+     * @param reasonerFactory the factory of the reasoners that check the entailments
+     * @param baseHash the hash of the base ontology
+     * @param axioms the axioms added to the base ontology
+     * @return
+     */
+    static String ontologyKey(OWLReasonerFactory reasonerFactory, String baseHash, Stream<? extends OWLAxiom> axioms) {
+        String reasoner = reasonerFactory.getClass().getName() + ":" + reasonerFactory.getReasonerName();
+        return hash(Stream.concat(Stream.of(reasoner, baseHash), axioms.map(Object::toString).sorted()));
+    }
+
+    /**
+     * Returns whether an axiom is entailed by a constrained ontology, computing and storing the result if needed.
+     * @param ontologyKey identifies the constrained ontology
+     * @param axiom
+     * @param check decides whether <code>axiom</code> is entailed, if the cache has no entry for it
+     * @return
+     */
+    boolean isEntailed(String ontologyKey, OWLAxiom axiom, BooleanSupplier check) {
+        String key = hash(Stream.of(ontologyKey, axiom.toString()));
+        Optional<Boolean> cachedOutcome = get(key);
+        if (cachedOutcome.isPresent()) {
+            return cachedOutcome.get();
+        }
+        boolean outcome = check.getAsBoolean();
+        put(key, outcome);
+        return outcome;
+    }
+
+    private Optional<Boolean> get(String key) {
+        Boolean outcome = memory.getIfPresent(key);
+        if (outcome == null && directory != null) {
+            try {
+                byte[] content = Files.readAllBytes(directory.resolve(key));
+                if (content.length == 1 && (content[0] == TRUE || content[0] == FALSE)) {
+                    outcome = content[0] == TRUE;
+                    memory.put(key, outcome);
+                }
+            } catch (IOException e) {
+                // A missing or unreadable entry is a cache miss.
+            }
+        }
+        return Optional.ofNullable(outcome);
+    }
+
+    private void put(String key, boolean outcome) {
+        memory.put(key, outcome);
+        if (directory == null) {
+            return;
+        }
+        try {
+            // Write into a temporary file, so that concurrent readers never see a partial entry.
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.write(temporary, new byte[]{outcome ? TRUE : FALSE});
+                Files.move(temporary, directory.resolve(key),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // The disk tier is best-effort: the outcome is still cached in memory.
+        }
+    }
+
+    private static String hash(Stream<String> strings) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        strings.forEachOrdered(string -> hasher.putString(string, StandardCharsets.UTF_8).putByte((byte) '\n'));
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Discards all in-memory entries.
+     */
+    public void invalidateAll() {
+        memory.invalidateAll();
+    }
+
+    /**
+     * Returns the number of in-memory entries.
+     * @return
+     */
+    public long size() {
+        return memory.size();
+    }
+}
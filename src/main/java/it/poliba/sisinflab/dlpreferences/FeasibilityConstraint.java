@@ -25,7 +25,7 @@ public class FeasibilityConstraint extends AbstractConstraint
     private Map<String, Boolean> clause;
 
     private FeasibilityConstraint(Map<String, Boolean> clause) {
-        this.clause = clause;
+        this.clause = ImmutableMap.copyOf(clause);
     }
 
     FeasibilityConstraint(DimacsLiterals clause, VarNameProvider converter) {
@@ -53,7 +53,7 @@ public class FeasibilityConstraint extends AbstractConstraint
 
     @Override
     public Map<String, Boolean> right() {
-        return ImmutableMap.copyOf(clause);
+        return clause;
     }
 
     /**
@@ -1,16 +1,27 @@
 package it.poliba.sisinflab.dlpreferences;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import exception.PreferenceReasonerException;
+import it.poliba.sisinflab.dlpreferences.except.SnapshotFormatException;
+import it.poliba.sisinflab.dlpreferences.nusmv.NuSMVRunner;
 import it.poliba.sisinflab.dlpreferences.sat.BooleanFormula;
+import it.poliba.sisinflab.dlpreferences.sat.ClauseEvaluator;
+import it.poliba.sisinflab.dlpreferences.sat.ClauseLog;
 import it.poliba.sisinflab.dlpreferences.sat.DimacsLiterals;
+import it.poliba.sisinflab.dlpreferences.sat.ImplicationChecker;
 import it.poliba.sisinflab.dlpreferences.sat.SAT4JSolver;
+import it.poliba.sisinflab.dlpreferences.sat.SolverProfile;
 import it.poliba.sisinflab.dlpreferences.tree.IntPreferenceForest;
 import model.Outcome;
 import org.semanticweb.HermiT.ReasonerFactory;
 import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.io.StreamDocumentSource;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.model.parameters.ChangeApplied;
 import org.semanticweb.owlapi.model.parameters.OntologyCopy;
@@ -18,8 +29,13 @@ import org.semanticweb.owlapi.rdf.rdfxml.parser.IRIProvider;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 
-import java.io.IOException;
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -32,14 +48,30 @@ public class OntologicalCPNet extends CPNet {
 
     /**
      * The constrained ontology, constructed by adding preference domain entities to the base ontology.
+     * Instances loaded from a snapshot only parse the constrained ontology when it is first needed.
      */
-    OWLOntology ontology;
+    private Lazy<OWLOntology> ontology;
+
+    /**
+     * Creates the OWL objects of the constraint sets.
+     */
+    private OWLDataFactory dataFactory;
 
     /**
      * Stores equivalent representations of the preference domain entities that were added to the base ontology.
      */
     private Table domainTable;
 
+    /**
+     * Encodes outcomes compactly during the computation of Pareto optimal outcomes.
+     */
+    private OutcomeCodec outcomeCodec;
+
+    /**
+     * Translates branch clauses into OWL axioms, reusing the OWL classes of domain values.
+     */
+    private ClauseAxiomFactory axiomFactory;
+
     /**
      * The SAT solver used internally to find satisfiable models for collections of ontological constraints,
      * such as {@link PreferenceGraph#getOptimumSet()} and {@link #getClosure()}.
@@ -52,11 +84,44 @@ public class OntologicalCPNet extends CPNet {
      */
     private OWLReasonerFactory reasonerFactory;
 
+    /**
+     * The idle reasoners over the constrained ontology, which are reused across reasoning services.
+     */
+    private ReasonerPool reasonerPool;
+
+    /**
+     * The shared provider ontology that the constrained ontology imports, or <code>null</code>
+     * if the constrained ontology is a copy of the base ontology.
+     */
+    private ProviderContext providerContext;
+
+    /**
+     * Remembers the entailment checks of the closure, across ontological CP-nets with the same constrained ontology.
+     */
+    private EntailmentCache entailmentCache;
+
+    /**
+     * Identifies the constrained ontology in the keys of {@link #entailmentCache}.
+     */
+    private Lazy<String> ontologyKey;
+
     /**
      * The ontological closure, wrapped in a lazy initializer.
      */
     private Lazy<ConstraintSet<FeasibilityConstraint>> closure;
 
+    /**
+     * The optimum set, in long form and in compact form, wrapped in lazy initializers,
+     * so that their clauses are compiled once.
+     */
+    private Lazy<ConstraintSet<OptimalityConstraint>> optimumSet;
+    private Lazy<ConstraintSet<OptimalityConstraint>> compactOptimumSet;
+
+    /**
+     * The independent components of the CP-net, wrapped in a lazy initializer.
+     */
+    private Lazy<List<Set<String>>> components;
+
     /**
      * @param builder
      * @throws OWLOntologyCreationException if the base ontology cannot be copied into
@@ -65,41 +130,255 @@ public class OntologicalCPNet extends CPNet {
     private OntologicalCPNet(Builder builder) throws OWLOntologyCreationException {
         super(builder.baseCPNet);
         domainTable = new Table(builder);
-        solver = new SAT4JSolver(domainTable.size());
-        reasonerFactory = builder.reasonerFactory;
-        closure = new Lazy<>(this::computeClosure);
-        // Build a mapping between domain values and their OWL representations.
-        OWLDataFactory dataFactory = builder.baseOntology.getOWLOntologyManager().getOWLDataFactory();
+        initialize(builder.reasonerFactory, builder.solverProfiles);
+        OWLDataFactory baseDataFactory = builder.baseOntology.getOWLOntologyManager().getOWLDataFactory();
         Map<String, OWLClass> owlDomainValues = graph.domainValues()
                 .collect(Collectors.toMap(
                         Function.identity(),
-                        domainValue -> dataFactory.getOWLClass(domainTable.getIRI(domainValue))));
+                        domainValue -> axiomFactory.getOWLClass(domainTable.getPositiveLiteral(domainValue))));
         // Build the new class definition axioms.
-        Stream<OWLEquivalentClassesAxiom> classDefinitions = graph.domainValues()
-                .map(domainValue -> dataFactory.getOWLEquivalentClassesAxiom(
+        List<OWLEquivalentClassesAxiom> classDefinitions = graph.domainValues()
+                .map(domainValue -> baseDataFactory.getOWLEquivalentClassesAxiom(
                         owlDomainValues.get(domainValue),
-                        builder.definitions.get(domainValue)));
+                        builder.definitions.get(domainValue)))
+                .collect(Collectors.toList());
         // Build the new partition axioms.
-        Stream<OWLDisjointUnionAxiom> partitions = graph.domainMap()
+        List<OWLDisjointUnionAxiom> partitions = graph.domainMap()
                 .values().stream()
-                .map(domain -> dataFactory.getOWLDisjointUnionAxiom(
-                        dataFactory.getOWLThing(),
-                        domain.stream().map(owlDomainValues::get)));
-        // Copy the base ontology into a local manager.
-        ontology = OWLManager.createOWLOntologyManager()
-                .copyOntology(builder.baseOntology, OntologyCopy.SHALLOW);
+                .map(domain -> baseDataFactory.getOWLDisjointUnionAxiom(
+                        baseDataFactory.getOWLThing(),
+                        domain.stream().map(owlDomainValues::get)))
+                .collect(Collectors.toList());
+        entailmentCache = builder.entailmentCache;
+        providerContext = builder.providerContext;
+        OWLOntology constrainedOntology;
+        if (providerContext != null) {
+            // Create an overlay that imports the provider ontology, instead of copying it.
+            constrainedOntology = providerContext.createOverlay();
+        } else {
+            // Copy the base ontology into a local manager.
+            constrainedOntology = OWLManager.createOWLOntologyManager()
+                    .copyOntology(builder.baseOntology, OntologyCopy.SHALLOW);
+        }
         // Add the new axioms to the constrained ontology.
-        if (ontology.addAxioms(Stream.concat(classDefinitions, partitions))
+        if (constrainedOntology.addAxioms(Stream.concat(classDefinitions.stream(), partitions.stream()))
                 != ChangeApplied.SUCCESSFULLY) {
             throw new OWLRuntimeException("error while applying changes to the new ontology");
         }
+        ontology = new Lazy<>(() -> constrainedOntology);
+        // Identify the constrained ontology by its content, when the closure is first computed.
+        // An overlay is identified by the provider ontology, hashed once by the context, and the new axioms.
+        ontologyKey = new Lazy<>(() -> providerContext != null
+                ? EntailmentCache.ontologyKey(reasonerFactory, providerContext.getOntologyHash(),
+                        Stream.concat(classDefinitions.stream(), partitions.stream()))
+                : EntailmentCache.ontologyKey(reasonerFactory, EntailmentCache.ontologyHash(constrainedOntology),
+                        Stream.empty()));
+        // Record the document of the base ontology as a source file, if it was loaded from a file.
+        IRI documentIRI = builder.baseOntology.getOWLOntologyManager().getOntologyDocumentIRI(builder.baseOntology);
+        if ("file".equals(documentIRI.getScheme())) {
+            Path document = Paths.get(documentIRI.toURI());
+            if (Files.isRegularFile(document)) {
+                try {
+                    sources = ImmutableMap.<Path, String>builder()
+                            .putAll(sources)
+                            .put(document, Snapshot.digest(document))
+                            .build();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
         // Check the constrained ontology for consistency.
+        OWLReasoner reasoner = reasonerFactory.createReasoner(constrainedOntology);
+        if (reasoner.isConsistent()) {
+            // Keep the reasoner, so that the first reasoning service does not repeat its preprocessing.
+            reasonerPool.release(reasoner);
+            return;
+        }
+        reasoner.dispose();
+        if (providerContext != null) {
+            providerContext.removeOverlay(constrainedOntology);
+        }
+        // The constrained ontology extends the base ontology, so the base ontology is only checked
+        // to tell which one is to blame, if it was not checked before.
+        if (builder.isConsistencyCheckMerged && providerContext == null
+                && !isConsistent(reasonerFactory, builder.baseOntology)) {
+            throw new IllegalStateException("inconsistent base ontology");
+        }
+        throw new IllegalStateException("inconsistent set of preferences");
+    }
+
+    private static boolean isConsistent(OWLReasonerFactory reasonerFactory, OWLOntology ontology) {
         OWLReasoner reasoner = reasonerFactory.createReasoner(ontology);
-        boolean arePrefsConsistent = reasoner.isConsistent();
+        boolean isConsistent = reasoner.isConsistent();
         reasoner.dispose();
-        if (!arePrefsConsistent) {
-            throw new IllegalStateException("inconsistent set of preferences");
+        return isConsistent;
+    }
+
+    /**
+     * Reads the domain table, the compiled constraint sets and the constrained ontology from a snapshot.
+     * Neither the ontology nor the reasoner are used: the constrained ontology is parsed when first needed.
+     */
+    private OntologicalCPNet(CPNet baseCPNet, Snapshot.Reader reader, OWLReasonerFactory reasonerFactory)
+            throws SnapshotFormatException {
+        super(baseCPNet);
+        domainTable = new Table(reader.readStrings(), reader.readStrings());
+        initialize(reasonerFactory, Collections.emptyMap());
+        entailmentCache = EntailmentCache.shared();
+        // As for a constrained ontology that is not an overlay, the whole ontology is hashed, if needed.
+        ontologyKey = new Lazy<>(() -> EntailmentCache.ontologyKey(
+                reasonerFactory, EntailmentCache.ontologyHash(getOntology()), Stream.empty()));
+        List<DimacsLiterals> optimumClauses = reader.readClauses(domainTable.size());
+        List<DimacsLiterals> closureClauses = reader.readClauses(domainTable.size());
+        byte[] ontologyDocument = reader.readBytes();
+        reader.requireEnd();
+        ImmutableSet.Builder<OptimalityConstraint> compactOptimumBuilder = ImmutableSet.builder();
+        for (DimacsLiterals clause : optimumClauses) {
+            // The condition is made of the negative literals, and the clause of the positive ones.
+            compactOptimumBuilder.add(OptimalityConstraint.builder()
+                    .addToCondition(Maps.filterValues(clause.asMap(domainTable), isPositive -> !isPositive).keySet())
+                    .addToClause(Maps.filterValues(clause.asMap(domainTable), isPositive -> isPositive).keySet())
+                    .build());
+        }
+        ConstraintSet<OptimalityConstraint> loadedOptimumSet = new ConstraintSet<>(
+                compactOptimumBuilder.build(), optimumClauses, domainTable, dataFactory);
+        ConstraintSet<FeasibilityConstraint> loadedClosure = new ConstraintSet<>(
+                closureClauses.stream()
+                        .map(clause -> new FeasibilityConstraint(clause, domainTable))
+                        .collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableSet::copyOf)),
+                closureClauses, domainTable, dataFactory);
+        compactOptimumSet = new Lazy<>(() -> loadedOptimumSet);
+        closure = new Lazy<>(() -> loadedClosure);
+        ontology = new Lazy<>(() -> {
+            try {
+                return OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(
+                        new StreamDocumentSource(new ByteArrayInputStream(ontologyDocument)),
+                        new OWLOntologyLoaderConfiguration()
+                                .setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT));
+            } catch (OWLOntologyCreationException e) {
+                throw new OWLRuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Initializes the components shared by built and loaded instances, once the domain table is available.
+     */
+    private void initialize(OWLReasonerFactory reasonerFactory, Map<SAT4JSolver.Usage, SolverProfile> solverProfiles) {
+        outcomeCodec = new OutcomeCodec(graph.domainMap(), domainTable::getPositiveLiteral);
+        solver = new SAT4JSolver(domainTable.size());
+        // Require exactly one domain value per preference variable in every model.
+        domainTable.getVariableGroups().values().forEach(solver::addExactlyOne);
+        // Enumerate each outcome once, regardless of any auxiliary variables.
+        solver.setProjection(domainTable.getDimacsLiterals());
+        solverProfiles.forEach(solver::setProfile);
+        this.reasonerFactory = reasonerFactory;
+        reasonerPool = new ReasonerPool(
+                () -> reasonerFactory.createReasoner(getOntology()),
+                Runtime.getRuntime().availableProcessors());
+        dataFactory = OWLManager.getOWLDataFactory();
+        closure = new Lazy<>(this::computeClosure);
+        optimumSet = new Lazy<>(() -> toConstraintSet(graph.getOptimumSet()));
+        compactOptimumSet = new Lazy<>(() -> toConstraintSet(graph.getCompactOptimumSet()));
+        components = new Lazy<>(() -> graph.connectedComponents(getClosure()));
+        // Build the OWL representations of domain values once, for the constrained ontology and the closure.
+        axiomFactory = new ClauseAxiomFactory(
+                OWLManager.createConcurrentOWLOntologyManager().getOWLDataFactory(),
+                domainTable.size(),
+                literal -> domainTable.iris[literal]);
+    }
+
+    /**
+     * Loads an ontological CP-net from a snapshot written by {@link #save(Path)},
+     * with the default reasoner factory.
+     *
+     * @param snapshot the snapshot file
+     * @param nusmvExecutable the NuSMV executable file
+     * @return
+     * @throws SnapshotFormatException if <code>snapshot</code> is not a valid snapshot of an ontological CP-net,
+     * or has a different version
+     * @throws FileNotFoundException if any {@link Path} argument is invalid
+     * @throws IOException if an I/O error occurs while reading the snapshot
+     */
+    public static OntologicalCPNet load(Path snapshot, Path nusmvExecutable) throws IOException {
+        return load(snapshot, nusmvExecutable, new ReasonerFactory());
+    }
+
+    /**
+     * Loads an ontological CP-net from a snapshot written by {@link #save(Path)}.
+     * No reasoning takes place while loading: the consistency of the constrained ontology
+     * was checked when the CP-net was built.
+     *
+     * @param snapshot the snapshot file
+     * @param nusmvExecutable the NuSMV executable file
+     * @param reasonerFactory the factory object for creating {@link OWLReasoner} instances
+     * @return
+     * @throws SnapshotFormatException if <code>snapshot</code> is not a valid snapshot of an ontological CP-net,
+     * or has a different version
+     * @throws FileNotFoundException if any {@link Path} argument is invalid
+     * @throws IOException if an I/O error occurs while reading the snapshot
+     */
+    public static OntologicalCPNet load(Path snapshot, Path nusmvExecutable, OWLReasonerFactory reasonerFactory)
+            throws IOException {
+        Objects.requireNonNull(reasonerFactory);
+        try (Snapshot.Reader reader = Snapshot.Reader.open(snapshot)) {
+            if (reader.readKind() != Snapshot.Kind.ONTOLOGICAL_CPNET) {
+                throw new SnapshotFormatException(snapshot, "not an ontological CP-net");
+            }
+            Map<Path, String> sources = reader.readSources();
+            CPNet baseCPNet = new CPNet(reader, sources, new NuSMVRunner(nusmvExecutable));
+            return new OntologicalCPNet(baseCPNet, reader, reasonerFactory);
+        }
+    }
+
+    @Override
+    Snapshot.Kind snapshotKind() {
+        return Snapshot.Kind.ONTOLOGICAL_CPNET;
+    }
+
+    /**
+     * Writes the sections of the CP-net, followed by the domain table, the compact optimum set
+     * and the closure, as DIMACS clauses, and the constrained ontology. The closure is computed first, if needed.
+     * <p>
+     * If the base ontology was loaded from a file, the snapshot also records its SHA-256 digest, which is checked
+     * by {@link CPNet#isSnapshotCurrent(Path)}. Preference definitions are not tracked: a snapshot must be saved
+     * again whenever they change. Solver profiles are not saved either.
+     */
+    @Override
+    void writeSnapshot(Snapshot.Writer writer) throws IOException {
+        super.writeSnapshot(writer);
+        List<String> domainValues = new ArrayList<>(domainTable.size());
+        List<String> iris = new ArrayList<>(domainTable.size());
+        for (int literal = 1; literal <= domainTable.size(); literal++) {
+            domainValues.add(domainTable.fromPositiveLiteral(literal));
+            iris.add(domainTable.iris[literal].toString());
+        }
+        writer.writeStrings(domainValues);
+        writer.writeStrings(iris);
+        writer.writeClauses(getCompactOptimumSet().clauses().collect(Collectors.toList()));
+        writer.writeClauses(getClosure().clauses().collect(Collectors.toList()));
+        ByteArrayOutputStream ontologyDocument = new ByteArrayOutputStream();
+        try {
+            // Store the imported axioms as well, so that the snapshot does not depend on other documents.
+            OWLOntology document = getOntology();
+            if (document.imports().findAny().isPresent()) {
+                document = OWLManager.createOWLOntologyManager().createOntology(
+                        document.importsClosure().flatMap(OWLOntology::axioms),
+                        document.getOntologyID().getOntologyIRI().orElse(null));
+            }
+            document.saveOntology(new FunctionalSyntaxDocumentFormat(), ontologyDocument);
+        } catch (OWLOntologyCreationException | OWLOntologyStorageException e) {
+            throw new IOException("cannot serialize the constrained ontology", e);
         }
+        writer.writeBytes(ontologyDocument.toByteArray());
+    }
+
+    /**
+     * Returns the constrained ontology.
+     * @return
+     */
+    OWLOntology getOntology() {
+        return ontology.getOrCompute();
     }
 
     public Table getDomainTable() {
@@ -107,16 +386,31 @@ public class OntologicalCPNet extends CPNet {
     }
 
     /**
-     * Retrieves the set of constraints that must be satisfied by undominated outcomes.
+     * Retrieves the set of constraints that must be satisfied by undominated outcomes,
+     * in long form (see {@link PreferenceGraph#getOptimumSet()}).
      * @return
      */
     public ConstraintSet<OptimalityConstraint> getOptimumSet() {
-        return toConstraintSet(graph.getOptimumSet());
+        return optimumSet.getOrCompute();
+    }
+
+    /**
+     * Retrieves a compact set of constraints with the same models as {@link #getOptimumSet()}
+     * (see {@link PreferenceGraph#getCompactOptimumSet()}); its clauses are used
+     * whenever undominated outcomes are computed or counted.
+     * @return
+     */
+    public ConstraintSet<OptimalityConstraint> getCompactOptimumSet() {
+        return compactOptimumSet.getOrCompute();
     }
 
     /**
      * Retrieves the ontological closure, that is the set of constraints
      * that must be satisfied by feasible outcomes.
+     *
+     * <p>The requirement of exactly one domain value per preference variable is encoded
+     * natively by the internal SAT solver, therefore the closure does not contain
+     * the clauses that follow from it.
      * @return
      */
     public ConstraintSet<FeasibilityConstraint> getClosure() {
@@ -124,7 +418,8 @@ public class OntologicalCPNet extends CPNet {
     }
 
     /**
-     * Returns a <code>ConstraintSet</code> instance backed by the specified <code>Set</code>.
+     * Returns a <code>ConstraintSet</code> instance backed by the specified <code>Set</code>,
+     * which must not change afterwards.
      * @param constraints
      * @return
      * @see #getOptimumSet()
@@ -132,113 +427,445 @@ public class OntologicalCPNet extends CPNet {
      */
     public <T extends Constraint> ConstraintSet<T> toConstraintSet(Set<T> constraints) {
         return new ConstraintSet<>(constraints, domainTable,
-                ontology.getOWLOntologyManager().getOWLDataFactory());
+                dataFactory);
     }
 
     /**
      * Computes the Pareto optimal outcomes using the ontological variant of the HARD-PARETO algorithm.
+     *
+     * <p>If the variables split into independent components (see {@link #getComponents()}),
+     * the Pareto optimal outcomes are the combinations of the Pareto optimal outcomes of each component,
+     * which are computed separately and in parallel. In this case, the returned <code>Set</code> is a view
+     * of their Cartesian product, whose outcomes are built while iterating.
      * @return
      * @throws IOException if an internal call to {@link #dominates(Outcome, Outcome)}
      * results in an <code>IOException</code>
      */
     public Set<Outcome> paretoOptimal() throws IOException {
-        ConstraintSet<OptimalityConstraint> optimalityConstraints =
-                getOptimumSet();
         ConstraintSet<FeasibilityConstraint> feasibilityConstraints =
                 getClosure();
-        ConstraintSet<? extends Constraint> paretoOptimalityConstraints =
-                toConstraintSet(Sets.union(optimalityConstraints, feasibilityConstraints));
-        Set<DimacsLiterals> undominatedModels, feasibleModels, paretoOptimalModels;
-        // Solve the constraints as boolean problems.
-        undominatedModels = solveConstraints(optimalityConstraints)
-                .collect(Collectors.toSet());
-        feasibleModels = solveConstraints(feasibilityConstraints)
-                .collect(Collectors.toSet());
-        paretoOptimalModels = solveConstraints(paretoOptimalityConstraints)
-                .collect(Collectors.toSet());
-        Set<Outcome> feasibleOutcomes = feasibleModels.stream()
-                .map(this::interpretModel)
-                .collect(Collectors.toSet());
-        Set<Outcome> paretoOptimalOutcomes = paretoOptimalModels.stream()
-                .map(this::interpretModel)
-                .collect(Collectors.toCollection(HashSet::new));
+        // In an acyclic CP-net, the outcome found by a forward sweep dominates every other outcome:
+        // if it is feasible, it is the only Pareto optimal outcome, and no enumeration is needed.
+        if (graph.isAcyclic()) {
+            Optional<DimacsLiterals> sweptOptimum = graph.sweepOptimal(Collections.emptyMap()).map(this::toModel);
+            if (sweptOptimum.isPresent() &&
+                    new ClauseEvaluator(feasibilityConstraints.toFormula()).test(sweptOptimum.get())) {
+                return ImmutableSet.of(interpretModel(sweptOptimum.get()));
+            }
+        }
+        return enumerateParetoOptimal();
+    }
+
+    /**
+     * Computes the Pareto optimal outcomes by enumerating the feasible outcomes,
+     * as {@link #paretoOptimal()} does when the forward sweep is not applicable.
+     * @return
+     */
+    Set<Outcome> enumerateParetoOptimal() {
+        ConstraintSet<FeasibilityConstraint> feasibilityConstraints =
+                getClosure();
+        List<Set<String>> components = getComponents();
+        if (components.size() < 2) {
+            return paretoOptimal(new Scope(solver, outcomeCodec, getCompactOptimumSet(), feasibilityConstraints,
+                    Collections.emptyMap()));
+        }
+        // Scopes share the lazily computed constraint sets, so they are built before going parallel.
+        List<Scope> scopes = components.stream()
+                .map(this::scope)
+                .collect(Collectors.toList());
+        List<Set<Outcome>> factors = scopes.parallelStream()
+                .map(this::paretoOptimal)
+                .collect(Collectors.toList());
+        return new ProductOutcomeSet(factors, components);
+    }
+
+    /**
+     * Computes the Pareto optimal outcomes within a scope: either the whole CP-net,
+     * or an independent component, whose outcomes only assign the variables of the component.
+     */
+    private Set<Outcome> paretoOptimal(Scope scope) {
+        ConstraintSet<OptimalityConstraint> optimalityConstraints = scope.optimumSet;
+        ConstraintSet<FeasibilityConstraint> feasibilityConstraints = scope.closure;
+        OutcomeCodec codec = scope.codec;
+        // Enumerate the feasible models once: the models that also satisfy the optimum set
+        // are exactly the models of the union of both constraint sets.
+        // Models are stored as encoded outcomes, and only decoded when needed as Outcome objects.
+        ClauseEvaluator optimalityEvaluator = new ClauseEvaluator(
+                optimalityConstraints.toFormula());
+        int width = codec.width();
+        CompactOutcomeSet feasibleOutcomes = new CompactOutcomeSet(width);
+        CompactOutcomeSet paretoOptimalOutcomes = new CompactOutcomeSet(width);
+        long[] code = new long[width];
+        try (Stream<DimacsLiterals> feasibleModels = scope.solver.solveSAT(feasibilityConstraints.toFormula())) {
+            for (Iterator<DimacsLiterals> iterator = feasibleModels.iterator(); iterator.hasNext(); ) {
+                DimacsLiterals model = iterator.next();
+                codec.encode(model, code);
+                feasibleOutcomes.add(code);
+                if (optimalityEvaluator.test(model)) {
+                    paretoOptimalOutcomes.add(code);
+                }
+            }
+        }
+        ImmutableSet.Builder<Outcome> result = ImmutableSet.builder();
+        for (int i = 0; i < paretoOptimalOutcomes.size(); i++) {
+            result.add(codec.decode(paretoOptimalOutcomes.codes(), i * width));
+        }
         // Check trivial conditions.
-        if (paretoOptimalModels.equals(feasibleModels) ||
-                (!undominatedModels.isEmpty() && paretoOptimalModels.equals(undominatedModels))) {
-            return ImmutableSet.copyOf(paretoOptimalOutcomes);
-        }
-        // Compute the set of unverified outcomes, that is the set of feasible, non-optimal outcomes.
-        Sets.SetView<Outcome> unverifiedOutcomes =
-                Sets.difference(feasibleOutcomes, paretoOptimalOutcomes);
-        // Search among unverified outcomes for additional Pareto optimal outcomes.
-        for (Outcome unverified : unverifiedOutcomes) {
+        // Since Pareto optimal models are a subset of both feasible and undominated models,
+        // comparing sizes is enough; undominated models are only counted as far as needed.
+        int paretoOptimalCount = paretoOptimalOutcomes.size();
+        if (paretoOptimalCount == feasibleOutcomes.size() ||
+                (paretoOptimalCount > 0 &&
+                        countModelsUpTo(scope.solver, optimalityConstraints, paretoOptimalCount + 1L) ==
+                                paretoOptimalCount)) {
+            return result.build();
+        }
+        // Condition dominance queries on the variables fixed in every feasible outcome,
+        // as long as the result of each query does not change.
+        // Variables outside the scope are pinned as well: they belong to other components, which share
+        // no parent and no importance statement with the scope, so they never affect the flips within it.
+        Map<String, String> backbone = feasibleBackbone(scope.solver, feasibilityConstraints);
+        Set<String> conditioningVariables = graph.descendantClosedSubset(backbone.keySet());
+        Map<String, String> conditioningAssignments = new HashMap<>(scope.pinnedAssignments);
+        conditioningAssignments.putAll(Maps.filterKeys(backbone, conditioningVariables::contains));
+        // Feasible outcomes are decoded at most once, when first compared.
+        long[] feasibleCodes = feasibleOutcomes.codes();
+        Outcome[] decoded = new Outcome[feasibleOutcomes.size()];
+        // Search among unverified outcomes, that is feasible, non-optimal outcomes,
+        // for additional Pareto optimal outcomes.
+        for (int i = 0; i < feasibleOutcomes.size(); i++) {
+            if (paretoOptimalOutcomes.contains(feasibleCodes, i * width)) {
+                continue;
+            }
+            Outcome unverified = decode(codec, feasibleCodes, i, decoded);
             boolean isDominated = false;
-            Iterator<Outcome> feasibleIter = feasibleOutcomes.iterator();
             // Check whether the current unverified outcome is dominated by some feasible outcome.
-            while (feasibleIter.hasNext() && !isDominated) {
-                isDominated = dominates(feasibleIter.next(), unverified);
+            for (int j = 0; j < feasibleOutcomes.size() && !isDominated; j++) {
+                isDominated = j != i &&
+                        dominates(decode(codec, feasibleCodes, j, decoded), unverified, conditioningAssignments);
             }
             // If the current unverified outcome is undominated among feasible outcomes, it is optimal.
             if (!isDominated) {
-                paretoOptimalOutcomes.add(unverified);
+                result.add(unverified);
             }
         }
-        return ImmutableSet.copyOf(paretoOptimalOutcomes);
+        return result.build();
+    }
+
+    /**
+     * Decodes the outcome at the specified position of an array of encoded outcomes,
+     * caching the result in <code>decoded</code>.
+     */
+    private static Outcome decode(OutcomeCodec codec, long[] codes, int position, Outcome[] decoded) {
+        if (decoded[position] == null) {
+            decoded[position] = codec.decode(codes, position * codec.width());
+        }
+        return decoded[position];
+    }
+
+    /**
+     * Converts a complete assignment into a DIMACS model, where the literals of the assigned values
+     * are positive and all other literals are negative.
+     */
+    private DimacsLiterals toModel(Map<String, String> assignment) {
+        Set<String> values = ImmutableSet.copyOf(assignment.values());
+        return DimacsLiterals.of(domainTable.getDimacsLiterals()
+                .map(literal -> values.contains(domainTable.fromPositiveLiteral(literal)) ? literal : -literal)
+                .toArray());
+    }
+
+    /**
+     * Returns the independent components of this CP-net: the connected components of the graph
+     * where each variable is linked to its parents and to its less important variables,
+     * and the variables of each clause of the closure are linked to each other.
+     * @return an unmodifiable <code>List</code> of unmodifiable <code>Set</code>s of variable names
+     * @see PreferenceGraph#connectedComponents(Iterable)
+     */
+    public List<Set<String>> getComponents() {
+        return components.getOrCompute();
+    }
+
+    /**
+     * Builds the scope of an independent component, with its own solver and outcome codec.
+     * The variables outside the component are pinned to their first domain value in dominance queries,
+     * so that NuSMV only explores the outcomes of the component.
+     */
+    private Scope scope(Set<String> component) {
+        SAT4JSolver componentSolver = new SAT4JSolver(domainTable.size());
+        Map<String, DimacsLiterals> variableGroups = domainTable.getVariableGroups();
+        component.forEach(variableName -> componentSolver.addExactlyOne(variableGroups.get(variableName)));
+        componentSolver.setProjection(component.stream()
+                .flatMapToInt(variableName -> variableGroups.get(variableName).stream()));
+        for (SAT4JSolver.Usage usage : SAT4JSolver.Usage.values()) {
+            componentSolver.setProfile(usage, solver.getProfile(usage));
+        }
+        Map<String, Set<String>> domainMap = Maps.filterKeys(graph.domainMap(), component::contains);
+        Set<String> domainValues = domainMap.values().stream()
+                .flatMap(Set::stream)
+                .collect(Collectors.toSet());
+        Map<String, String> pinnedAssignments = new HashMap<>();
+        graph.domainMap().forEach((variableName, domain) -> {
+            if (!component.contains(variableName)) {
+                pinnedAssignments.put(variableName, domain.iterator().next());
+            }
+        });
+        return new Scope(
+                componentSolver,
+                new OutcomeCodec(domainMap, domainTable::getPositiveLiteral),
+                toConstraintSet(Sets.filter(getCompactOptimumSet(), constraint -> isWithin(constraint, domainValues))),
+                toConstraintSet(Sets.filter(getClosure(), constraint -> isWithin(constraint, domainValues))),
+                pinnedAssignments);
+    }
+
+    /**
+     * Returns <code>true</code> if every domain value of a constraint belongs to the specified variables.
+     */
+    private static boolean isWithin(Constraint constraint, Set<String> domainValues) {
+        return domainValues.containsAll(constraint.left().keySet()) &&
+                domainValues.containsAll(constraint.right().keySet());
+    }
+
+    /**
+     * The constraints and the solver used to compute the Pareto optimal outcomes of a set of variables.
+     */
+    private static class Scope {
+        private final SAT4JSolver solver;
+        private final OutcomeCodec codec;
+        private final ConstraintSet<OptimalityConstraint> optimumSet;
+        private final ConstraintSet<FeasibilityConstraint> closure;
+        private final Map<String, String> pinnedAssignments;
+
+        private Scope(SAT4JSolver solver, OutcomeCodec codec, ConstraintSet<OptimalityConstraint> optimumSet,
+                      ConstraintSet<FeasibilityConstraint> closure, Map<String, String> pinnedAssignments) {
+            this.solver = solver;
+            this.codec = codec;
+            this.optimumSet = optimumSet;
+            this.closure = closure;
+            this.pinnedAssignments = pinnedAssignments;
+        }
+    }
+
+    /**
+     * Computes the backbone of the feasible outcomes, that is the domain values
+     * shared by every feasible outcome (for example, because the provider ontology
+     * forces a value of some preference variable).
+     * @return a <code>Map</code> from each fixed preference variable to its value,
+     * or an empty <code>Map</code> if no outcome is feasible
+     * @see SAT4JSolver#backbone(BooleanFormula)
+     */
+    public Map<String, String> feasibleBackbone() {
+        return feasibleBackbone(solver, getClosure());
+    }
+
+    private Map<String, String> feasibleBackbone(SAT4JSolver solver, ConstraintSet<FeasibilityConstraint> closure) {
+        Set<String> fixedValues = solver.backbone(closure.toFormula())
+                .map(literals -> literals.stream()
+                        .filter(literal -> literal > 0)
+                        .mapToObj(domainTable::fromPositiveLiteral)
+                        .collect(Collectors.toSet()))
+                .orElse(Collections.emptySet());
+        ImmutableMap.Builder<String, String> backbone = ImmutableMap.builder();
+        graph.domainMap().forEach((variableName, domain) -> domain.stream()
+                .filter(fixedValues::contains)
+                .findAny()
+                .ifPresent(value -> backbone.put(variableName, value)));
+        return backbone.build();
+    }
+
+    /**
+     * Ranks the feasible outcomes by utility, and returns the <code>k</code> best ones.
+     *
+     * <p>The ranking is computed by pseudo-boolean optimization rather than by enumeration:
+     * the utility of an outcome is encoded as a linear objective over the DIMACS literals of
+     * domain values, where each weighted combination of domain values is represented by an auxiliary
+     * variable equivalent to the conjunction of its values. The best outcome is found by the optimizer,
+     * then excluded from the next optimization, until <code>k</code> outcomes are found.
+     *
+     * @param utilities
+     * @param k the maximum number of outcomes to return
+     * @return the best feasible outcomes, in order of non-increasing utility;
+     * fewer than <code>k</code> outcomes are returned if fewer outcomes are feasible
+     * @throws IllegalArgumentException if <code>k</code> is negative, or if <code>utilities</code>
+     * contains unknown domain values
+     */
+    public List<Outcome> bestByUtility(UtilityPreferences utilities, int k) {
+        Objects.requireNonNull(utilities);
+        if (k < 0) {
+            throw new IllegalArgumentException("negative k: " + k);
+        }
+        Set<String> domainValues = domainTable.getDomainValues();
+        BooleanFormula constraints = getClosure().toFormula();
+        // Objective coefficients are negated, since the solver minimizes the objective function.
+        List<Integer> coefficients = new ArrayList<>(Collections.nCopies(domainTable.size(), 0));
+        utilities.getWeights().forEach((combination, weight) -> {
+            if (!domainValues.containsAll(combination)) {
+                throw new IllegalArgumentException(String.format("unknown domain values in %s", combination));
+            }
+            int[] literals = combination.stream().mapToInt(domainTable::getPositiveLiteral).toArray();
+            if (literals.length == 1) {
+                coefficients.set(literals[0] - 1, coefficients.get(literals[0] - 1) - weight);
+                return;
+            }
+            // Define an auxiliary variable equivalent to the conjunction of the literals.
+            int auxiliary = coefficients.size() + 1;
+            coefficients.add(-weight);
+            for (int literal : literals) {
+                constraints.addClause(DimacsLiterals.of(-auxiliary, literal));
+            }
+            constraints.addClause(DimacsLiterals.of(IntStream.concat(
+                    IntStream.of(auxiliary),
+                    Arrays.stream(literals).map(literal -> -literal)).toArray()));
+        });
+        return solver.bestModels(constraints, coefficients.stream().mapToInt(Integer::intValue), k).stream()
+                .map(this::interpretModel)
+                .collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableList::copyOf));
     }
 
     /**
-     * Creates a new buffering <code>OWLReasoner</code> using the internal {@link OWLReasonerFactory},
-     * with the constrained ontology as the root ontology, then executes the specified reasoning service.
-     * The return value of <code>service</code> is relayed to the caller.
-     * After <code>service</code> returns, the reasoner is immediately disposed of.
+     * Executes the specified reasoning service with an <code>OWLReasoner</code> whose root ontology
+     * is the constrained ontology. The return value of <code>service</code> is relayed to the caller.
+     *
+     * <p>Reasoners are created by the internal {@link OWLReasonerFactory} and, after <code>service</code> returns,
+     * kept for later services instead of being disposed of; each reasoner is used by one thread at a time.
+     * Therefore, <code>service</code> must not dispose of the reasoner, nor change the constrained ontology.
      * @param service
      * @param <T> the type of the value returned by <code>service</code>
      * @return the value returned by <code>service</code>
      */
     public <T> T applyService(Function<OWLReasoner, T> service) {
-        OWLReasoner reasoner = reasonerFactory.createReasoner(ontology);
-        T result = service.apply(reasoner);
-        reasoner.dispose();
-        return result;
+        return reasonerPool.apply(service);
+    }
+
+    /**
+     * Disposes of the reasoners kept by {@link #applyService(Function)}.
+     * Later reasoning services create new reasoners.
+     */
+    public void disposeReasoners() {
+        reasonerPool.clear();
+    }
+
+    /**
+     * Disposes of the reasoners kept by {@link #applyService(Function)} and, if this ontological CP-net
+     * was built upon a {@link ProviderContext}, removes its constrained ontology from the shared manager.
+     * Constraint sets and outcomes that were already computed remain available,
+     * but no further reasoning services can be executed.
+     */
+    public void dispose() {
+        disposeReasoners();
+        if (providerContext != null) {
+            providerContext.removeOverlay(getOntology());
+        }
     }
 
     /**
      * Translates a set of constraints into a boolean satisfiability problem
      * and finds satisfiable models.
+     * The returned <code>Stream</code> is lazy; see {@link SAT4JSolver#solveSAT(BooleanFormula)}.
      * @param constraints
      * @return
      */
     public Stream<DimacsLiterals> solveConstraints(
             ConstraintSet<? extends Constraint> constraints) {
-        BooleanFormula formula = constraints.clauses().collect(BooleanFormula.toFormula());
+        BooleanFormula formula = constraints.toFormula();
         return solver.solveSAT(formula);
     }
 
+    /**
+     * Counts the satisfiable models of a set of constraints exactly, without enumerating them.
+     * @param constraints
+     * @return
+     * @see SAT4JSolver#countModels(BooleanFormula)
+     */
+    public BigInteger countModels(ConstraintSet<? extends Constraint> constraints) {
+        return solver.countModels(constraints.toFormula());
+    }
+
+    /**
+     * Estimates the number of satisfiable models of a set of constraints,
+     * for sets too large to be counted exactly.
+     * @param constraints
+     * @return
+     * @see SAT4JSolver#estimateModels(BooleanFormula)
+     */
+    public BigInteger estimateModels(ConstraintSet<? extends Constraint> constraints) {
+        return solver.estimateModels(constraints.toFormula());
+    }
+
+    /**
+     * Counts the feasible outcomes, that is the models of {@link #getClosure()}.
+     * @return
+     */
+    public BigInteger countFeasible() {
+        return countModels(getClosure());
+    }
+
+    /**
+     * Counts the undominated outcomes, that is the models of {@link #getOptimumSet()}.
+     * @return
+     */
+    public BigInteger countUndominated() {
+        return countModels(getCompactOptimumSet());
+    }
+
+    /**
+     * Counts the feasible, undominated outcomes, which are Pareto optimal
+     * and are the starting point of {@link #paretoOptimal()}.
+     * @return
+     */
+    public BigInteger countParetoCandidates() {
+        return countModels(toConstraintSet(Sets.union(getCompactOptimumSet(), getClosure())));
+    }
+
+    /**
+     * Counts the satisfiable models of a set of constraints, stopping as soon as
+     * <code>limit</code> models are found.
+     * @param solver
+     * @param constraints
+     * @param limit
+     * @return
+     */
+    private static long countModelsUpTo(SAT4JSolver solver, ConstraintSet<? extends Constraint> constraints,
+                                        long limit) {
+        try (Stream<DimacsLiterals> models = solver.solveSAT(constraints.toFormula())) {
+            return models.limit(limit).count();
+        }
+    }
+
     /**
      * Converts a satisfiable DIMACS model into an {@link Outcome}.
      * @param model
      * @return
      */
     public Outcome interpretModel(DimacsLiterals model) {
-        Set<String> domainValuesInModel = model.stream()
-                .filter(dimacsLiteral -> dimacsLiteral > 0)
-                .mapToObj(domainTable::fromPositiveLiteral)
-                .collect(Collectors.toSet());
+        // Assign each positive literal to its preference variable in a single pass.
+        String[] assignment = new String[graph.size()];
+        int assigned = 0;
+        int positiveCount = 0;
+        for (PrimitiveIterator.OfInt iterator = model.stream().iterator(); iterator.hasNext(); ) {
+            int literal = iterator.nextInt();
+            if (literal <= 0) {
+                continue;
+            }
+            positiveCount++;
+            String domainValue = domainTable.fromPositiveLiteral(literal);
+            int variableIndex = domainTable.variableIndices[literal];
+            if (assignment[variableIndex] == null) {
+                assigned++;
+            }
+            assignment[variableIndex] = domainValue;
+        }
         // Verify that the model contains exactly one domain value per preference variable.
-        if (graph.size() != domainValuesInModel.size()) {
+        // The solver enforces this requirement, so a mismatch signals an internal error.
+        if (assigned != graph.size() || positiveCount != graph.size()) {
             throw new IllegalStateException(
                     String.format("incorrect model size: expected %d, got %d",
                             graph.size(),
-                            domainValuesInModel.size()));
+                            positiveCount));
+        }
+        Map<String, String> assignments = new HashMap<>(2 * assignment.length);
+        for (int variableIndex = 0; variableIndex < assignment.length; variableIndex++) {
+            assignments.put(domainTable.variableNames[variableIndex], assignment[variableIndex]);
         }
-        // Map each preference variable to the corresponding domain value in the model.
-        Map<String, String> assignments = graph.domainMap().entrySet().stream()
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        entry -> entry.getValue().stream()
-                                .filter(domainValuesInModel::contains)
-                                .findAny().get()
-                ));
         try {
             return new Outcome(assignments);
         } catch (PreferenceReasonerException e) {
@@ -249,10 +876,14 @@ public class OntologicalCPNet extends CPNet {
     private ConstraintSet<FeasibilityConstraint> computeClosure() {
         IntPreferenceForest forest = new IntPreferenceForest(domainTable.size());
         ClosureBuilder closureBuilder = new ClosureBuilder();
-        while (!forest.isEmpty()) {
-            forest.expand(closureBuilder::accept);
+        try {
+            while (!forest.isEmpty()) {
+                forest.expand(closureBuilder::accept);
+            }
+            return closureBuilder.build();
+        } finally {
+            closureBuilder.dispose();
         }
-        return closureBuilder.build();
     }
 
     /**
@@ -275,23 +906,51 @@ public class OntologicalCPNet extends CPNet {
         return new Builder(baseCPNet, baseOntology);
     }
 
+    /**
+     * Returns a builder that builds an <code>OntologicalCPNet</code>
+     * upon the specified <code>CPNet</code> and the provider ontology of the specified context.
+     *
+     * <p>The constrained ontology of the <code>OntologicalCPNet</code> is an overlay that imports
+     * the provider ontology, rather than a copy of it; the provider ontology is not checked for consistency again.
+     * The reasoner factory of <code>providerContext</code> is used.
+     * Invoke {@link #dispose()} when the <code>OntologicalCPNet</code> is no longer needed,
+     * to remove the overlay from the shared manager of <code>providerContext</code>.
+     * @param baseCPNet the parent object of the <code>OntologicalCPNet</code> instance to build
+     * @param providerContext
+     * @return
+     */
+    public static Builder builder(CPNet baseCPNet, ProviderContext providerContext) {
+        Objects.requireNonNull(baseCPNet);
+        Objects.requireNonNull(providerContext);
+        return new Builder(baseCPNet, providerContext);
+    }
+
     /**
      * Builds the ontological closure by accepting {@link FeasibilityConstraint}s
      * and checking whether they are eligible for inclusion in the closure.
      * A feasibility constraint is eligible if the axiom obtained from
      * {@link Constraint#asAxiom(OWLDataFactory, IRIProvider)} is entailed by the ontology.
      *
-     * <p>This is a thread-safe implementation.
+     * <p>This is a thread-safe implementation. Accepted clauses are appended to a lock-free
+     * {@link ClauseLog}; each worker thread checks redundancy with its own incremental solver,
+     * which loads the clauses published by the other workers as they appear.
      */
     private class ClosureBuilder {
-        private Set<FeasibilityConstraint> closure;
-        private BooleanFormula closureAsFormula;
-        private OWLDataFactory concurrentDataFactory;
+        private ClauseLog closureLog;
+        private ThreadLocal<ImplicationChecker> implicationCheckers;
+        private Queue<ImplicationChecker> createdCheckers;
+        private String closureOntologyKey;
 
         public ClosureBuilder() {
-            closure = Collections.synchronizedSet(new HashSet<>());
-            closureAsFormula = BooleanFormula.emptySynchronized();
-            concurrentDataFactory = OWLManager.createConcurrentOWLOntologyManager().getOWLDataFactory();
+            closureLog = new ClauseLog();
+            // Resolve the ontology key before the worker threads start.
+            closureOntologyKey = ontologyKey.getOrCompute();
+            createdCheckers = new ConcurrentLinkedQueue<>();
+            implicationCheckers = ThreadLocal.withInitial(() -> {
+                ImplicationChecker checker = solver.implicationChecker(closureLog);
+                createdCheckers.add(checker);
+                return checker;
+            });
         }
 
         /**
@@ -309,15 +968,16 @@ public class OntologicalCPNet extends CPNet {
         public boolean accept(IntStream branch) {
             DimacsLiterals branchClause = new DimacsLiterals(branch);
             // Check whether the current branch clause is entailed by the closure.
-            if (solver.implies(closureAsFormula, branchClause)) {
+            if (implicationCheckers.get().test(branchClause)) {
                 return false;
             }
-            // Check whether the constrained ontology entails the current branch axiom.
-            FeasibilityConstraint constraint = new FeasibilityConstraint(branchClause, domainTable);
-            OWLSubClassOfAxiom branchAxiom = constraint.asAxiom(concurrentDataFactory, domainTable);
-            if (applyService(reasoner -> reasoner.isEntailed(branchAxiom))) {
-                closure.add(constraint);
-                closureAsFormula.addClause(branchClause);
+            // Check whether the constrained ontology entails the current branch axiom,
+            // unless the check was already made for an identical constrained ontology.
+            // The axiom is the one of the corresponding FeasibilityConstraint, built from cached OWL classes.
+            OWLSubClassOfAxiom branchAxiom = axiomFactory.clauseAxiom(branchClause);
+            if (entailmentCache.isEntailed(closureOntologyKey, branchAxiom,
+                    () -> applyService(reasoner -> reasoner.isEntailed(branchAxiom)))) {
+                closureLog.append(branchClause);
                 return false;
             }
             return true;
@@ -328,7 +988,24 @@ public class OntologicalCPNet extends CPNet {
          * @return
          */
         public ConstraintSet<FeasibilityConstraint> build() {
-            return toConstraintSet(closure);
+            Set<FeasibilityConstraint> closure = new HashSet<>();
+            closureLog.forEachClause(0, closureLog.snapshot(), (literals, from, to) ->
+                    closure.add(new FeasibilityConstraint(
+                            DimacsLiterals.of(Arrays.copyOfRange(literals, from, to)), domainTable)));
+            return toConstraintSet(Collections.unmodifiableSet(closure));
+        }
+
+        /**
+         * Disposes the implication checkers created by the worker threads.
+         * The threads of a pool outlive the closure computation, and would otherwise keep
+         * their checkers, and the solvers within, reachable through the <code>ThreadLocal</code>.
+         */
+        public void dispose() {
+            implicationCheckers = null;
+            ImplicationChecker checker;
+            while ((checker = createdCheckers.poll()) != null) {
+                checker.dispose();
+            }
         }
 
     }
@@ -359,6 +1036,33 @@ public class OntologicalCPNet extends CPNet {
          */
         private ImmutableTable<String, Integer, IRI> internalTable;
 
+        /**
+         * The domain value of each DIMACS literal; the element at index 0 is unused.
+         * This array, along with {@link #iris}, {@link #variableIndices} and {@link #literalIndex},
+         * answers lookups in constant time, without creating views of {@link #internalTable}.
+         */
+        private String[] domainValueArray;
+
+        /**
+         * The <code>IRI</code> of each DIMACS literal; the element at index 0 is unused.
+         */
+        private IRI[] iris;
+
+        /**
+         * The index in {@link #variableNames} of the preference variable of each DIMACS literal.
+         */
+        private int[] variableIndices;
+
+        /**
+         * The names of the preference variables.
+         */
+        private String[] variableNames;
+
+        /**
+         * Maps each domain value to its DIMACS literal, minus one.
+         */
+        private PerfectStringIndex literalIndex;
+
         /**
          * Constructs a <code>Table</code> by generating a unique {@link IRI}
          * for each element of {@link Builder#domainValues}.
@@ -381,12 +1085,47 @@ public class OntologicalCPNet extends CPNet {
                     .findFirst().orElseThrow(() -> new IllegalStateException(
                             String.format("Unable to generate a unique IRI for domain value '%s'", str)));
             List<String> domainList = graph.domainValues().collect(Collectors.toList());
+            compile(domainList, domainList.stream().map(converter::getIRI).collect(Collectors.toList()));
+        }
+
+        /**
+         * Constructs a <code>Table</code> from the domain values and <code>IRI</code>s read from a snapshot.
+         * @param domainList the domain values, in DIMACS literal order
+         * @param iriList the <code>IRI</code> of each domain value
+         * @throws SnapshotFormatException if the domain values differ from those of the preference graph
+         */
+        private Table(List<String> domainList, List<String> iriList) throws SnapshotFormatException {
+            if (!domainList.equals(graph.domainValues().collect(Collectors.toList()))
+                    || iriList.size() != domainList.size()) {
+                throw new SnapshotFormatException("domain table does not match the preference graph");
+            }
+            compile(domainList, iriList.stream().map(IRI::create).collect(Collectors.toList()));
+        }
+
+        private void compile(List<String> domainList, List<IRI> iriList) {
             ImmutableTable.Builder<String, Integer, IRI> tableBuilder = ImmutableTable.builder();
-            IntStream.range(0, domainList.size()).forEachOrdered(index -> {
-                String domainValue = domainList.get(index);
-                tableBuilder.put(domainValue, index+1, converter.getIRI(domainValue));
-            });
+            IntStream.range(0, domainList.size()).forEachOrdered(index ->
+                    tableBuilder.put(domainList.get(index), index+1, iriList.get(index)));
             internalTable = tableBuilder.build();
+            // Compile the table into arrays indexed by DIMACS literal.
+            int size = domainList.size();
+            domainValueArray = new String[size + 1];
+            iris = new IRI[size + 1];
+            for (int literal = 1; literal <= size; literal++) {
+                domainValueArray[literal] = domainList.get(literal - 1);
+                iris[literal] = internalTable.get(domainValueArray[literal], literal);
+            }
+            literalIndex = new PerfectStringIndex(domainList.toArray(new String[0]));
+            variableNames = new String[graph.size()];
+            variableIndices = new int[size + 1];
+            int variableIndex = 0;
+            for (Map.Entry<String, Set<String>> entry : graph.domainMap().entrySet()) {
+                variableNames[variableIndex] = entry.getKey();
+                for (String domainValue : entry.getValue()) {
+                    variableIndices[getPositiveLiteral(domainValue)] = variableIndex;
+                }
+                variableIndex++;
+            }
         }
 
         /**
@@ -398,7 +1137,11 @@ public class OntologicalCPNet extends CPNet {
         @Override
         public int getPositiveLiteral(String domainElement) {
             Objects.requireNonNull(domainElement);
-            return internalTable.row(domainElement).keySet().iterator().next();
+            int index = literalIndex.indexOf(domainElement);
+            if (index < 0) {
+                throw new NoSuchElementException(domainElement);
+            }
+            return index + 1;
         }
 
         /**
@@ -412,7 +1155,14 @@ public class OntologicalCPNet extends CPNet {
          */
         @Override
         public String fromPositiveLiteral(int value) {
-            return internalTable.column(value).keySet().iterator().next();
+            if (value == 0) {
+                throw new IllegalArgumentException();
+            }
+            int literal = value < 0 ? -value : value;
+            if (literal >= domainValueArray.length) {
+                throw new NoSuchElementException(String.valueOf(value));
+            }
+            return domainValueArray[literal];
         }
 
         /**
@@ -423,8 +1173,19 @@ public class OntologicalCPNet extends CPNet {
          */
         @Override
         public IRI getIRI(String domainElement) {
-            Objects.requireNonNull(domainElement);
-            return internalTable.row(domainElement).values().iterator().next();
+            return iris[getPositiveLiteral(domainElement)];
+        }
+
+        /**
+         * Returns the DIMACS literals of the domain values of each preference variable.
+         * @return a <code>Map</code> where each variable name is mapped to the DIMACS literals of its domain
+         */
+        public Map<String, DimacsLiterals> getVariableGroups() {
+            return graph.domainMap().entrySet().stream()
+                    .collect(Collectors.toMap(
+                            Map.Entry::getKey,
+                            entry -> new DimacsLiterals(entry.getValue().stream()
+                                    .mapToInt(this::getPositiveLiteral))));
         }
 
         /**
@@ -484,11 +1245,21 @@ public class OntologicalCPNet extends CPNet {
         // parameters for the OntologicalCPNet instance to build
         private CPNet baseCPNet;
         private OWLReasonerFactory reasonerFactory;
+        private Map<SAT4JSolver.Usage, SolverProfile> solverProfiles;
+        private boolean isConsistencyCheckMerged;
+        private ProviderContext providerContext;
+        private EntailmentCache entailmentCache;
         // temporary variables for the building process
         private Set<String> domainValues;
         private OWLOntology baseOntology;
         private Map<String, OWLClassExpression> definitions;
 
+        private Builder(CPNet baseCPNet, ProviderContext providerContext) {
+            this(baseCPNet, providerContext.getOntology());
+            this.providerContext = providerContext;
+            reasonerFactory = providerContext.getReasonerFactory();
+        }
+
         private Builder(CPNet baseCPNet, OWLOntology baseOntology) {
             domainValues = baseCPNet.getPreferenceGraph().domainValues()
                     .collect(Collectors.toSet());
@@ -496,6 +1267,7 @@ public class OntologicalCPNet extends CPNet {
             this.baseOntology = baseOntology;
             definitions = new HashMap<>();
             reasonerFactory = null;
+            solverProfiles = new EnumMap<>(SAT4JSolver.Usage.class);
         }
 
         /**
@@ -503,6 +1275,8 @@ public class OntologicalCPNet extends CPNet {
          *
          * <p>The factory object is an optional parameter for the {@link OntologicalCPNet} to build.
          * If this method is not invoked before {@link #build()}, a default value will be used.
+         * Builders created by {@link OntologicalCPNet#builder(CPNet, ProviderContext)} use
+         * the factory object of the provider context.
          * @param factory
          * @return
          * @throws IllegalStateException if a factory object was already set for this builder
@@ -513,6 +1287,59 @@ public class OntologicalCPNet extends CPNet {
             return this;
         }
 
+        /**
+         * Sets the cache of the entailment checks that build the closure.
+         *
+         * <p>The cache is an optional parameter for the {@link OntologicalCPNet} to build.
+         * If this method is not invoked before {@link #build()}, {@link EntailmentCache#shared()} will be used.
+         * @param cache
+         * @return
+         * @throws IllegalStateException if a cache was already set for this builder
+         */
+        public Builder withEntailmentCache(EntailmentCache cache) {
+            if (this.entailmentCache != null) throw new IllegalStateException();
+            this.entailmentCache = Objects.requireNonNull(cache);
+            return this;
+        }
+
+        /**
+         * Checks the consistency of the base ontology and of the constrained ontology with a single reasoner.
+         *
+         * <p>By default, {@link #build()} checks the base ontology before creating the constrained ontology,
+         * then checks the constrained ontology with a second reasoner. Since the constrained ontology includes
+         * the base ontology, the first check is redundant when the second succeeds: with this option,
+         * the base ontology is only checked if the constrained ontology is inconsistent,
+         * in order to report the cause of the inconsistency.
+         * Either way, the reasoner of the constrained ontology is kept for {@link #applyService(Function)}.
+         * @return
+         * @throws IllegalStateException if this option was already set for this builder
+         */
+        public Builder withMergedConsistencyCheck() {
+            if (isConsistencyCheckMerged) throw new IllegalStateException();
+            isConsistencyCheckMerged = true;
+            return this;
+        }
+
+        /**
+         * Sets the profile of the SAT solvers created for the specified use, for example
+         * the implication checks that build the closure, or the enumeration of feasible outcomes.
+         *
+         * <p>Solver profiles are optional parameters for the {@link OntologicalCPNet} to build.
+         * Uses without a profile are assigned {@link SolverProfile#LIGHT}.
+         * @param usage
+         * @param profile
+         * @return
+         * @throws IllegalStateException if a profile was already set for <code>usage</code>
+         */
+        public Builder withSolverProfile(SAT4JSolver.Usage usage, SolverProfile profile) {
+            Objects.requireNonNull(usage);
+            Objects.requireNonNull(profile);
+            if (solverProfiles.putIfAbsent(usage, profile) != null) {
+                throw new IllegalStateException(String.format("solver profile for %s already set", usage));
+            }
+            return this;
+        }
+
         /**
          * OWL class definitions are required parameters for the {@link OntologicalCPNet} to build.
          * This method must be invoked for each element
@@ -576,11 +1403,12 @@ public class OntologicalCPNet extends CPNet {
             if (reasonerFactory == null) {
                 reasonerFactory = new ReasonerFactory();
             }
-            // Check the base ontology for consistency.
-            OWLReasoner reasoner = reasonerFactory.createReasoner(baseOntology);
-            boolean isBaseConsistent = reasoner.isConsistent();
-            reasoner.dispose();
-            if (!isBaseConsistent) {
+            if (entailmentCache == null) {
+                entailmentCache = EntailmentCache.shared();
+            }
+            // Check the base ontology for consistency, unless it is checked along with the constrained ontology
+            // or it is the provider ontology of a context, which was checked once.
+            if (!isConsistencyCheckMerged && providerContext == null && !isConsistent(reasonerFactory, baseOntology)) {
                 throw new IllegalStateException("inconsistent base ontology");
             }
             return new OntologicalCPNet(this);
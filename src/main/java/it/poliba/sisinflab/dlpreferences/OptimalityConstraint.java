@@ -1,8 +1,9 @@
 package it.poliba.sisinflab.dlpreferences;
 
+import com.google.common.collect.Maps;
+
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -21,6 +22,12 @@ public class OptimalityConstraint extends AbstractConstraint
      */
     Set<String> clause;
 
+    /**
+     * The left and right sides of the implication, computed once.
+     */
+    private Map<String, Boolean> left;
+    private Map<String, Boolean> right;
+
     /**
      * Constructs an <code>OptimalityConstraint</code> as a subclass relationship between
      * an intersection of elements (the <code>condition</code>) on the left side
@@ -31,6 +38,8 @@ public class OptimalityConstraint extends AbstractConstraint
     private OptimalityConstraint(Set<String> condition, Set<String> clause) {
         this.condition = condition;
         this.clause = clause;
+        this.left = Maps.toMap(condition, elem -> true);
+        this.right = Maps.toMap(clause, elem -> true);
     }
 
     @Override
@@ -49,14 +58,12 @@ public class OptimalityConstraint extends AbstractConstraint
 
     @Override
     public Map<String, Boolean> left() {
-        return condition.stream()
-                .collect(Collectors.toMap(Function.identity(), elem -> true));
+        return left;
     }
 
     @Override
     public Map<String, Boolean> right() {
-        return clause.stream()
-                .collect(Collectors.toMap(Function.identity(), elem -> true));
+        return right;
     }
 
     /**
@@ -0,0 +1,143 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import exception.PreferenceReasonerException;
+import it.poliba.sisinflab.dlpreferences.sat.DimacsLiterals;
+import model.Outcome;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Encodes outcomes as fixed-width arrays of <code>long</code> words, so that large sets of outcomes
+ * can be stored in a {@link CompactOutcomeSet} instead of a set of {@link Outcome} objects.
+ *
+ * <p>Each preference variable is encoded by the index of its value within its domain.
+ * The indices are packed into words as mixed-radix numbers: a word holds the variables whose
+ * domain sizes multiply to at most <code>Long.MAX_VALUE</code>. Every net of up to 62 binary
+ * variables (or 39 ternary variables) is thus encoded by a single word; wider nets take more words.
+ */
+final class OutcomeCodec {
+    private String[] variables;
+    private String[][] domains;
+
+    /**
+     * The word that holds each variable.
+     */
+    private int[] words;
+
+    /**
+     * The positional weight of each variable within its word.
+     */
+    private long[] weights;
+
+    /**
+     * The variable of each DIMACS literal, or <code>-1</code> if the literal is unknown.
+     */
+    private int[] literalVariables;
+
+    /**
+     * The index of the domain value of each DIMACS literal within its domain.
+     */
+    private int[] literalIndices;
+
+    private int width;
+
+    /**
+     * @param domainMap a <code>Map</code> from each preference variable to its domain
+     * @param literalOf the function that maps each domain value to its positive DIMACS literal
+     */
+    OutcomeCodec(Map<String, Set<String>> domainMap, ToIntFunction<String> literalOf) {
+        int size = domainMap.size();
+        variables = new String[size];
+        domains = new String[size][];
+        words = new int[size];
+        weights = new long[size];
+        int maxLiteral = 0;
+        int variable = 0;
+        long weight = 1;
+        for (Map.Entry<String, Set<String>> entry : domainMap.entrySet()) {
+            variables[variable] = entry.getKey();
+            domains[variable] = entry.getValue().toArray(new String[0]);
+            int radix = domains[variable].length;
+            if (radix == 0) {
+                throw new IllegalArgumentException(String.format("empty domain for %s", entry.getKey()));
+            }
+            // Start a new word if the variable does not fit in the current one.
+            if (weight > Long.MAX_VALUE / radix) {
+                width++;
+                weight = 1;
+            }
+            words[variable] = width;
+            weights[variable] = weight;
+            weight *= radix;
+            for (String value : domains[variable]) {
+                maxLiteral = Math.max(maxLiteral, literalOf.applyAsInt(value));
+            }
+            variable++;
+        }
+        width++;
+        literalVariables = new int[maxLiteral + 1];
+        literalIndices = new int[maxLiteral + 1];
+        Arrays.fill(literalVariables, -1);
+        for (variable = 0; variable < size; variable++) {
+            for (int index = 0; index < domains[variable].length; index++) {
+                int literal = literalOf.applyAsInt(domains[variable][index]);
+                literalVariables[literal] = variable;
+                literalIndices[literal] = index;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of words of each encoded outcome.
+     * @return
+     */
+    int width() {
+        return width;
+    }
+
+    /**
+     * Encodes a model into <code>code</code>, overwriting its first {@link #width()} words.
+     * Literals that do not represent a domain value are ignored.
+     * @param model a model that contains exactly one positive literal per preference variable
+     * @param code
+     * @throws IllegalStateException if a preference variable is not assigned exactly once
+     */
+    void encode(DimacsLiterals model, long[] code) {
+        Arrays.fill(code, 0, width, 0L);
+        int assigned = 0;
+        for (PrimitiveIterator.OfInt iterator = model.stream().iterator(); iterator.hasNext(); ) {
+            int literal = iterator.nextInt();
+            if (literal <= 0 || literal >= literalVariables.length || literalVariables[literal] < 0) {
+                continue;
+            }
+            int variable = literalVariables[literal];
+            code[words[variable]] += literalIndices[literal] * weights[variable];
+            assigned++;
+        }
+        // The solver enforces one value per variable, so a mismatch signals an internal error.
+        if (assigned != variables.length) {
+            throw new IllegalStateException(
+                    String.format("incorrect model size: expected %d, got %d", variables.length, assigned));
+        }
+    }
+
+    /**
+     * Decodes the outcome stored in <code>codes</code> at the specified offset.
+     * @param codes
+     * @param offset
+     * @return
+     */
+    Outcome decode(long[] codes, int offset) {
+        Map<String, String> assignments = new HashMap<>(2 * variables.length);
+        for (int variable = 0; variable < variables.length; variable++) {
+            long index = (codes[offset + words[variable]] / weights[variable]) % domains[variable].length;
+            assignments.put(variables[variable], domains[variable][(int) index]);
+        }
+        try {
+            return new Outcome(assignments);
+        } catch (PreferenceReasonerException e) {
+            throw new IllegalStateException("invalid outcome", e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import java.util.*;
+
+/**
+ * A minimal lookup structure that maps each string of a fixed array to its position,
+ * by means of a perfect hash function built with the hash-and-displace technique.
+ *
+ * <p>Strings are first distributed into buckets by their {@link String#hashCode()}; then,
+ * starting from the largest bucket, each bucket is assigned a displacement seed such that
+ * a second, seeded hash function maps all of its strings to distinct free slots.
+ * A lookup computes two hashes, reads a single slot and compares a single string,
+ * without allocating any object.
+ */
+final class PerfectStringIndex {
+    /**
+     * The maximum number of seeds tried for a bucket before the table is enlarged.
+     */
+    private static final int MAX_SEEDS = 1 << 16;
+
+    private int[] seeds;
+    private String[] keys;
+    private int[] positions;
+    private int slotMask;
+
+    /**
+     * @param strings
+     * @throws IllegalArgumentException if <code>strings</code> contains duplicates
+     */
+    PerfectStringIndex(String[] strings) {
+        if (new HashSet<>(Arrays.asList(strings)).size() != strings.length) {
+            throw new IllegalArgumentException("duplicate strings");
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, 2 * strings.length - 1)) << 1;
+        while (!build(strings, capacity)) {
+            capacity <<= 1;
+        }
+    }
+
+    /**
+     * Returns the position of the specified string in the array passed to the constructor.
+     * @param string
+     * @return a non-negative position, or <code>-1</code> if the string is unknown
+     */
+    int indexOf(String string) {
+        int slot = slot(string, seeds[bucket(string, seeds.length)], slotMask);
+        return string.equals(keys[slot]) ? positions[slot] : -1;
+    }
+
+    /**
+     * Attempts to build the table with the specified number of slots.
+     * @return <code>false</code> if some bucket could not be placed
+     */
+    private boolean build(String[] strings, int capacity) {
+        int bucketCount = Math.max(1, strings.length / 2);
+        List<List<Integer>> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (int i = 0; i < strings.length; i++) {
+            buckets.get(bucket(strings[i], bucketCount)).add(i);
+        }
+        Integer[] order = new Integer[bucketCount];
+        for (int i = 0; i < bucketCount; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt((Integer bucket) -> buckets.get(bucket).size()).reversed());
+        seeds = new int[bucketCount];
+        keys = new String[capacity];
+        positions = new int[capacity];
+        slotMask = capacity - 1;
+        int[] slots = new int[strings.length];
+        for (int bucket : order) {
+            List<Integer> members = buckets.get(bucket);
+            if (members.isEmpty()) {
+                break;
+            }
+            int seed = 0;
+            while (!fits(strings, members, seed, slots)) {
+                if (++seed == MAX_SEEDS) {
+                    return false;
+                }
+            }
+            seeds[bucket] = seed;
+            for (int i = 0; i < members.size(); i++) {
+                keys[slots[i]] = strings[members.get(i)];
+                positions[slots[i]] = members.get(i);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified seed maps the members of a bucket to distinct free slots,
+     * which are stored in <code>slots</code>.
+     */
+    private boolean fits(String[] strings, List<Integer> members, int seed, int[] slots) {
+        for (int i = 0; i < members.size(); i++) {
+            slots[i] = slot(strings[members.get(i)], seed, slotMask);
+            if (keys[slots[i]] != null) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slots[i]) return false;
+            }
+        }
+        return true;
+    }
+
+    private static int bucket(String string, int bucketCount) {
+        int hash = string.hashCode() * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % bucketCount;
+    }
+
+    /**
+     * A seeded hash of the characters of the string, independent of {@link String#hashCode()},
+     * so that strings with the same hash code can be told apart.
+     */
+    private static int slot(String string, int seed, int mask) {
+        int hash = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = 0; i < string.length(); i++) {
+            hash = (hash ^ string.charAt(i)) * 0x01000193;
+        }
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -1,17 +1,20 @@
 package it.poliba.sisinflab.dlpreferences;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
+import it.poliba.sisinflab.dlpreferences.except.SnapshotFormatException;
 import it.poliba.sisinflab.dlpreferences.except.SpecFileParseException;
 import model.PreferenceSpecification;
 import model.PreferenceStatement;
 import model.PreferenceVariable;
 import util.Constants;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -20,6 +23,7 @@ import java.util.stream.Stream;
  * <ul>
  *     <li>the set of domain elements;</li>
  *     <li>the set of parent nodes;</li>
+ *     <li>the set of less important variables, from the relative importance statements of a TCP-net;</li>
  *     <li>the <em>optimum set</em>, containing the optimal domain element for each parent assignment.</li>
  * </ul>
  */
@@ -29,8 +33,19 @@ public class PreferenceGraph {
      */
     private Map<String, Node> nodeMap;
 
+    /**
+     * The variable names sorted so that parents precede their children, or <code>null</code> if the graph is cyclic.
+     */
+    private List<String> topologicalOrder;
+
+    /**
+     * A cycle of the graph, or <code>null</code> if the graph is acyclic.
+     */
+    private List<String> cycle;
+
     private PreferenceGraph(Map<String, Node> nodeMap) {
         this.nodeMap = nodeMap;
+        sortNodes();
     }
 
     public Map<String, Node> getNodes() {
@@ -66,13 +81,275 @@ public class PreferenceGraph {
     }
 
     /**
-     * Retrieves the set of constraints that must be satisfied by the undominated outcomes.
+     * Retrieves the set of constraints that must be satisfied by the undominated outcomes,
+     * in long form: for each node, the set contains one constraint per parent assignment.
+     * The returned set is an unmodifiable view, whose elements are generated on demand
+     * from the compiled conditional preference tables.
      * @return
+     * @see #getCompactOptimumSet()
      */
     public Set<OptimalityConstraint> getOptimumSet() {
-        return nodeMap.values().stream()
-                .flatMap(Node::optimum)
-                .collect(Collectors.toSet());
+        return new AbstractSet<OptimalityConstraint>() {
+            @Override
+            public Iterator<OptimalityConstraint> iterator() {
+                return nodeMap.values().stream().flatMap(Node::optimum).iterator();
+            }
+
+            @Override
+            public int size() {
+                long size = nodeMap.values().stream().mapToLong(node -> node.optimum.size()).sum();
+                return (int) Math.min(size, Integer.MAX_VALUE);
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return nodeMap.values().stream().anyMatch(node -> node.optimum.contains(o));
+            }
+        };
+    }
+
+    /**
+     * Retrieves a compact set of constraints that is equivalent to {@link #getOptimumSet()}
+     * for outcomes that assign exactly one value to each variable.
+     * The set contains the constraints of the preference specification that apply to some parent assignment,
+     * except those made redundant by a constraint with the same clause and a more general condition;
+     * therefore, its size does not grow with the number of parent assignments.
+     * @return an unmodifiable <code>Set</code>
+     */
+    public Set<OptimalityConstraint> getCompactOptimumSet() {
+        return Collections.unmodifiableSet(nodeMap.values().stream()
+                .flatMap(Node::rules)
+                .collect(Collectors.toSet()));
+    }
+
+    /**
+     * Returns the preferred domain values of the specified variable, given the values of its parents.
+     * The lookup takes constant time with respect to the size of the conditional preference table.
+     * @param variableName
+     * @param assignment a <code>Map</code> from variable names to domain values, which must include
+     *                   the parents of <code>variableName</code> (for example, a complete outcome)
+     * @return the <em>clause</em> of the applicable optimality constraint
+     * @throws IllegalArgumentException if the variable does not exist, or if <code>assignment</code>
+     * does not assign a valid domain value to some parent of the variable
+     */
+    public Set<String> preferredValues(String variableName, Map<String, String> assignment) {
+        Node node = nodeMap.get(Objects.requireNonNull(variableName));
+        if (node == null) {
+            throw new IllegalArgumentException("unknown variable " + variableName);
+        }
+        return node.preferredValues(Objects.requireNonNull(assignment));
+    }
+
+    /**
+     * Returns the largest subset of the specified variables that also contains
+     * every descendant of its elements.
+     * The variables that are less important than a variable count as its descendants,
+     * since an improving flip of a variable may change its less important variables too.
+     * @param variableNames
+     * @return
+     */
+    public Set<String> descendantClosedSubset(Set<String> variableNames) {
+        Set<String> closedSubset = new HashSet<>(variableNames);
+        closedSubset.retainAll(nodeMap.keySet());
+        Map<String, List<String>> moreImportant = new HashMap<>();
+        nodeMap.forEach((variableName, node) -> node.lessImportant().forEach(lessImportantVariable ->
+                moreImportant.computeIfAbsent(lessImportantVariable, key -> new ArrayList<>()).add(variableName)));
+        // Remove the parents and the more important variables of excluded variables until a fixpoint is reached.
+        Deque<String> excluded = nodeMap.keySet().stream()
+                .filter(variableName -> !closedSubset.contains(variableName))
+                .collect(Collectors.toCollection(ArrayDeque::new));
+        while (!excluded.isEmpty()) {
+            String variableName = excluded.pop();
+            Stream.concat(nodeMap.get(variableName).parents(),
+                    moreImportant.getOrDefault(variableName, Collections.emptyList()).stream())
+                    .forEach(ancestor -> {
+                        if (closedSubset.remove(ancestor)) {
+                            excluded.push(ancestor);
+                        }
+                    });
+        }
+        return closedSubset;
+    }
+
+    /**
+     * Returns <code>true</code> if no variable is an ancestor of itself.
+     * @return
+     */
+    public boolean isAcyclic() {
+        return cycle == null;
+    }
+
+    /**
+     * Returns a cycle of the graph, as a sequence of variable names where each variable is a parent of the next one,
+     * and the last variable is a parent of the first one.
+     * @return an unmodifiable <code>List</code>, or an empty <code>Optional</code> if the graph is acyclic
+     */
+    public Optional<List<String>> findCycle() {
+        return Optional.ofNullable(cycle);
+    }
+
+    /**
+     * Returns the variable names sorted so that each variable follows its parents.
+     * @return an unmodifiable <code>List</code>
+     * @throws IllegalStateException if the graph is cyclic
+     */
+    public List<String> topologicalOrder() {
+        if (cycle != null) {
+            throw new IllegalStateException(String.format("cyclic preference graph: %s -> %s",
+                    String.join(" -> ", cycle), cycle.get(0)));
+        }
+        return topologicalOrder;
+    }
+
+    /**
+     * Computes the best outcome that agrees with a partial assignment, by visiting the variables
+     * in topological order and giving each unassigned variable its preferred value.
+     * In an acyclic CP-net, the resulting outcome dominates every other outcome that agrees with
+     * <code>partialAssignment</code>; the sweep takes linear time in the number of variables.
+     * @param partialAssignment a <code>Map</code> from variable names to domain values
+     * @return a <code>Map</code> from each variable name to its value, or an empty <code>Optional</code>
+     * if a variable has more than one preferred value, and the best outcome is not unique
+     * @throws IllegalStateException if the graph is cyclic
+     * @throws IllegalArgumentException if <code>partialAssignment</code> contains an unknown variable,
+     * or a value outside the domain of its variable
+     */
+    public Optional<Map<String, String>> sweepOptimal(Map<String, String> partialAssignment) {
+        List<String> order = topologicalOrder();
+        partialAssignment.forEach((variableName, value) -> {
+            Node node = nodeMap.get(variableName);
+            if (node == null) {
+                throw new IllegalArgumentException("unknown variable " + variableName);
+            }
+            if (!node.domain.contains(value)) {
+                throw new IllegalArgumentException(
+                        String.format("invalid value for variable %s: %s", variableName, value));
+            }
+        });
+        Map<String, String> outcome = new HashMap<>(partialAssignment);
+        for (String variableName : order) {
+            if (!outcome.containsKey(variableName)) {
+                Set<String> preferred = nodeMap.get(variableName).preferredValues(outcome);
+                if (preferred.size() != 1) {
+                    return Optional.empty();
+                }
+                outcome.put(variableName, preferred.iterator().next());
+            }
+        }
+        return Optional.of(Collections.unmodifiableMap(outcome));
+    }
+
+    /**
+     * Sorts the nodes topologically, by repeatedly removing the nodes whose parents have all been removed.
+     * If some nodes are left, each of them has a remaining parent, so that following remaining parents
+     * from any of them eventually leads back to an already visited node, which closes a cycle.
+     */
+    private void sortNodes() {
+        Map<String, Integer> pendingParents = new HashMap<>();
+        Map<String, List<String>> children = new HashMap<>();
+        nodeMap.forEach((variableName, node) -> {
+            pendingParents.put(variableName, node.parents.size());
+            node.parents().forEach(parent ->
+                    children.computeIfAbsent(parent, key -> new ArrayList<>()).add(variableName));
+        });
+        Deque<String> ready = pendingParents.entrySet().stream()
+                .filter(entry -> entry.getValue() == 0)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toCollection(ArrayDeque::new));
+        List<String> order = new ArrayList<>(nodeMap.size());
+        while (!ready.isEmpty()) {
+            String variableName = ready.poll();
+            order.add(variableName);
+            for (String child : children.getOrDefault(variableName, Collections.emptyList())) {
+                if (pendingParents.merge(child, -1, Integer::sum) == 0) {
+                    ready.add(child);
+                }
+            }
+        }
+        if (order.size() == nodeMap.size()) {
+            topologicalOrder = Collections.unmodifiableList(order);
+            return;
+        }
+        // Walk backwards along the edges between remaining nodes.
+        List<String> path = new ArrayList<>();
+        Map<String, Integer> pathPositions = new HashMap<>();
+        String current = pendingParents.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .findAny().get().getKey();
+        while (!pathPositions.containsKey(current)) {
+            pathPositions.put(current, path.size());
+            path.add(current);
+            current = nodeMap.get(current).parents()
+                    .filter(parent -> pendingParents.get(parent) > 0)
+                    .findAny().get();
+        }
+        List<String> backwardCycle = new ArrayList<>(path.subList(pathPositions.get(current), path.size()));
+        Collections.reverse(backwardCycle);
+        cycle = Collections.unmodifiableList(backwardCycle);
+    }
+
+    /**
+     * Partitions the variables into the connected components of the graph where each variable is linked
+     * to its parents and to its less important variables, and the variables of each constraint are linked
+     * to each other. Two variables in different components are independent: they neither share a
+     * conditional preference table nor a relative importance statement, nor appear together in a constraint.
+     * @param constraints the constraints whose domain values link their variables, such as the closure of an
+     *                    ontological CP-net; domain values that do not belong to the graph are ignored
+     * @return an unmodifiable <code>List</code> of unmodifiable <code>Set</code>s of variable names
+     */
+    public List<Set<String>> connectedComponents(Iterable<? extends Constraint> constraints) {
+        String[] variables = nodeMap.keySet().toArray(new String[0]);
+        Map<String, Integer> variableIndices = new HashMap<>();
+        Map<String, Integer> valueIndices = new HashMap<>();
+        for (int i = 0; i < variables.length; i++) {
+            variableIndices.put(variables[i], i);
+            for (String value : nodeMap.get(variables[i]).domain) {
+                valueIndices.put(value, i);
+            }
+        }
+        // Union-find forest over the variable indices.
+        int[] roots = IntStream.range(0, variables.length).toArray();
+        for (int i = 0; i < variables.length; i++) {
+            for (String parent : nodeMap.get(variables[i]).parents) {
+                union(roots, i, variableIndices.get(parent));
+            }
+            for (String lessImportantVariable : nodeMap.get(variables[i]).lessImportant) {
+                union(roots, i, variableIndices.get(lessImportantVariable));
+            }
+        }
+        for (Constraint constraint : constraints) {
+            int first = -1;
+            for (String value : Iterables.concat(constraint.left().keySet(), constraint.right().keySet())) {
+                Integer index = valueIndices.get(value);
+                if (index == null) {
+                    continue;
+                }
+                if (first < 0) {
+                    first = index;
+                } else {
+                    union(roots, first, index);
+                }
+            }
+        }
+        Map<Integer, Set<String>> components = new LinkedHashMap<>();
+        for (int i = 0; i < variables.length; i++) {
+            components.computeIfAbsent(find(roots, i), root -> new HashSet<>()).add(variables[i]);
+        }
+        return Collections.unmodifiableList(components.values().stream()
+                .map(Collections::unmodifiableSet)
+                .collect(Collectors.toList()));
+    }
+
+    private static int find(int[] roots, int i) {
+        while (roots[i] != i) {
+            // Path halving.
+            roots[i] = roots[roots[i]];
+            i = roots[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] roots, int i, int j) {
+        roots[find(roots, i)] = find(roots, j);
     }
 
     /**
@@ -101,36 +378,106 @@ public class PreferenceGraph {
             graphBuilder.addDomainValues(v.getVariableName(), v.getDomainValues());
         }
         for (PreferenceStatement stmt : prefSpec.getStatements()) {
-            String variableName = stmt.getVariableName();
-            OptimalityConstraint.Builder constraintBuilder = OptimalityConstraint.builder();
-            try {
-                for (String parentAssignment : stmt.getParentAssignments()) {
-                    String[] parsedAssignment = parentAssignment.split("\\=");
-                    if (parsedAssignment.length != 2) {
-                        throw new Exception(String.format("bad condition specification: '%s'", parentAssignment));
-                    }
-                    constraintBuilder.addToCondition(parsedAssignment[1]);
-                    graphBuilder.addParentNodes(variableName, parsedAssignment[0]);
-                }
-                if (stmt.getIntravarPreferences().isEmpty()) {
-                    throw new Exception(String.format("bad preference statement: '%s'", stmt));
-                }
-                String intravarPref = stmt.getIntravarPreferences().get(0);
-                String[] preferred = intravarPref.split(Constants.PREFERENCE_SYMBOL_IN_XML);
-                if (preferred.length == 0) {
-                    throw new Exception(String.format("bad preference specification: '%s'", intravarPref));
-                }
-                constraintBuilder.addToClause(preferred[0]);
-            } catch (PatternSyntaxException e) {
-                throw new SpecFileParseException(prefSpec.getPrefSpecFileName(), e);
-            } catch (Exception e) {
-                throw new SpecFileParseException(prefSpec.getPrefSpecFileName(), e.getMessage());
+            addStatement(graphBuilder, prefSpec.getPrefSpecFileName(), stmt.getVariableName(),
+                    stmt.getParentAssignments(), stmt.getIntravarPreferences());
+            if (stmt.getLessImpVariables() != null) {
+                graphBuilder.addLessImportantVariables(stmt.getVariableName(), stmt.getLessImpVariables());
             }
-            graphBuilder.addConstraints(variableName, constraintBuilder.build());
         }
         return graphBuilder.build();
     }
 
+    /**
+     * Adds the constraint of a single preference statement to a graph builder.
+     *
+     * @param graphBuilder
+     * @param fileName the name of the preference specification file, used in error messages
+     * @param variableName the variable of the statement
+     * @param parentAssignments the conditions of the statement, in the form <code>X=v</code>
+     * @param intravarPreferences the orderings of the statement, in the form <code>superior:inferior</code>
+     * @throws SpecFileParseException if a condition or an ordering is malformed
+     */
+    static void addStatement(Builder graphBuilder, String fileName, String variableName,
+                             Collection<String> parentAssignments, List<String> intravarPreferences)
+            throws SpecFileParseException {
+        OptimalityConstraint.Builder constraintBuilder = OptimalityConstraint.builder();
+        try {
+            for (String parentAssignment : parentAssignments) {
+                String[] parsedAssignment = parentAssignment.split("\\=");
+                if (parsedAssignment.length != 2) {
+                    throw new Exception(String.format("bad condition specification: '%s'", parentAssignment));
+                }
+                constraintBuilder.addToCondition(parsedAssignment[1]);
+                graphBuilder.addParentNodes(variableName, parsedAssignment[0]);
+            }
+            if (intravarPreferences.isEmpty()) {
+                throw new Exception(String.format("bad preference statement for variable '%s'", variableName));
+            }
+            String intravarPref = intravarPreferences.get(0);
+            String[] preferred = intravarPref.split(Constants.PREFERENCE_SYMBOL_IN_XML);
+            if (preferred.length == 0) {
+                throw new Exception(String.format("bad preference specification: '%s'", intravarPref));
+            }
+            constraintBuilder.addToClause(preferred[0]);
+        } catch (PatternSyntaxException e) {
+            throw new SpecFileParseException(fileName, e);
+        } catch (Exception e) {
+            throw new SpecFileParseException(fileName, e.getMessage());
+        }
+        graphBuilder.addConstraints(variableName, constraintBuilder.build());
+    }
+
+    /**
+     * Writes the variables of this graph into a snapshot, each with its domain, its parents,
+     * its less important variables and the compact form of its optimum set.
+     * @param writer
+     * @throws IOException
+     */
+    void write(Snapshot.Writer writer) throws IOException {
+        writer.writeInt(nodeMap.size());
+        for (Map.Entry<String, Node> entry : nodeMap.entrySet()) {
+            Node node = entry.getValue();
+            writer.writeString(entry.getKey());
+            writer.writeStrings(Arrays.asList(node.domainArray));
+            writer.writeStrings(Arrays.asList(node.parentArray));
+            writer.writeStrings(node.lessImportant);
+            writer.writeInt(node.rules.size());
+            for (OptimalityConstraint rule : node.rules) {
+                writer.writeStrings(rule.condition);
+                writer.writeStrings(rule.clause);
+            }
+        }
+    }
+
+    /**
+     * Reads a graph written by {@link #write(Snapshot.Writer)}.
+     * @param reader
+     * @return
+     * @throws SnapshotFormatException if the snapshot does not contain a valid graph
+     */
+    static PreferenceGraph read(Snapshot.Reader reader) throws SnapshotFormatException {
+        Builder graphBuilder = builder();
+        int size = reader.readLength();
+        for (int i = 0; i < size; i++) {
+            String variableName = reader.readString();
+            graphBuilder.addDomainValues(variableName, reader.readStrings());
+            graphBuilder.addParentNodes(variableName, reader.readStrings());
+            graphBuilder.addLessImportantVariables(variableName, reader.readStrings());
+            int ruleCount = reader.readLength();
+            for (int j = 0; j < ruleCount; j++) {
+                graphBuilder.addConstraints(variableName, OptimalityConstraint.builder()
+                        .addToCondition(reader.readStrings())
+                        .addToClause(reader.readStrings())
+                        .build());
+            }
+        }
+        try {
+            return graphBuilder.build();
+        } catch (IllegalStateException e) {
+            throw new SnapshotFormatException("invalid preference graph: " + e.getMessage());
+        }
+    }
+
     public static class Builder extends StreamBasedBuilder<PreferenceGraph> {
         private Map<String, Node.Builder> builders;
 
@@ -196,6 +543,30 @@ public class PreferenceGraph {
             return this;
         }
 
+        /**
+         * Adds <code>elements</code> to the set of variables that are less important than the specified variable.
+         * The corresponding node will be updated if already present, otherwise it will be created.
+         * @param elements
+         * @return
+         * @throws NullPointerException if any argument is <code>null</code>
+         */
+        public Builder addLessImportantVariables(String variableName, String... elements) {
+            super.addElements(createIfAbsent(variableName).lessImportantBuilder, elements);
+            return this;
+        }
+
+        /**
+         * Adds <code>elements</code> to the set of variables that are less important than the specified variable.
+         * The corresponding node will be updated if already present, otherwise it will be created.
+         * @param elements
+         * @return
+         * @throws NullPointerException if any argument is <code>null</code>
+         */
+        public Builder addLessImportantVariables(String variableName, Iterable<String> elements) {
+            super.addElements(createIfAbsent(variableName).lessImportantBuilder, elements);
+            return this;
+        }
+
         /**
          * Adds <code>elements</code> to the set of parents of the specified variable.
          * The corresponding node will be updated if already present, otherwise it will be created.
@@ -223,8 +594,9 @@ public class PreferenceGraph {
         /**
          * Build a {@link PreferenceGraph} instance.
          * For each node, the optimum set undergoes a two-step validation process:
-         * first, it is checked for consistency; then, it is rebuilt in an equivalent long form,
-         * which lists every parent assignment explicitly.
+         * first, it is compiled into a table indexed by parent assignment and checked for consistency;
+         * then, it is rebuilt in an equivalent long form, which lists every parent assignment explicitly.
+         * The compiled table also answers {@link #preferredValues(String, Map)} queries.
          *
          * <p>The consistency check involves satisfying the following conditions:
          * <ul>
@@ -245,32 +617,27 @@ public class PreferenceGraph {
                     nodeMap.values().stream().flatMap(Node::domain).distinct().count()) {
                 throw new IllegalStateException("duplicate domain elements in different nodes");
             }
-            // Validate the temporary graph and rebuild the optimum sets.
-            for (Node node : nodeMap.values()) {
-                // Build the list of parent assignments.
-                List<Set<String>> parentDomains = node.parents()
-                        .map(parentName -> nodeMap.get(parentName).domain)
-                        .collect(Collectors.toList());
-                Set<List<String>> parentAssignments = Sets.cartesianProduct(parentDomains);
-                // Validate the optimum set and build the equivalent long form.
-                Stream.Builder<OptimalityConstraint> optimumLongForm = Stream.builder();
-                for (List<String> assignment : parentAssignments) {
-                    Set<Set<String>> applicableClauses = node.getApplicableConstraints(assignment)
-                            .map(constraint -> constraint.clause)
-                            .collect(Collectors.toSet());
-                    if (applicableClauses.isEmpty()) {
-                        throw new IllegalStateException("no applicable preference for assignment " + assignment);
-                    }
-                    if (applicableClauses.size() > 1) {
-                        throw new IllegalStateException("conflicting preferences for assignment " + assignment);
-                    }
-                    optimumLongForm.accept(OptimalityConstraint.builder()
-                            .addToCondition(assignment)
-                            .addToClause(applicableClauses.iterator().next())
-                            .build());
+            // Validate the relative importance statements.
+            nodeMap.forEach((variableName, node) -> node.lessImportant().forEach(lessImportantVariable -> {
+                if (!nodeMap.containsKey(lessImportantVariable) || lessImportantVariable.equals(variableName)) {
+                    throw new IllegalStateException(String.format(
+                            "invalid less important variable %s for %s", lessImportantVariable, variableName));
+                }
+            }));
+            // Index each domain value within its domain, and map it to its variable.
+            Map<String, Integer> domainIndices = new HashMap<>();
+            Map<String, String> valueVariables = new HashMap<>();
+            nodeMap.forEach((variableName, node) -> {
+                node.domainArray = node.domain.toArray(new String[0]);
+                for (int index = 0; index < node.domainArray.length; index++) {
+                    domainIndices.put(node.domainArray[index], index);
+                    valueVariables.put(node.domainArray[index], variableName);
                 }
-                // Replace the optimum set with the equivalent long form.
-                node.optimum = optimumLongForm.build().collect(Collectors.toSet());
+            });
+            // Validate the temporary graph and compile the conditional preference tables;
+            // the optimum sets are replaced with their compact form and a long form view.
+            for (Node node : nodeMap.values()) {
+                node.compile(nodeMap, domainIndices, valueVariables);
             }
             return new PreferenceGraph(nodeMap);
         }
@@ -284,12 +651,29 @@ public class PreferenceGraph {
         Set<String> domain;
         // The set of parent nodes.
         Set<String> parents;
-        // The optimum set.
+        // The set of variables that are less important than this one.
+        Set<String> lessImportant;
+        // The optimum set: as specified while building, then a long form view of the compiled table.
         Set<OptimalityConstraint> optimum;
-
-        private Node(Set<String> domain, Set<String> parents, Set<OptimalityConstraint> optimum) {
+        // The compact optimum set, built from the specified constraints.
+        private Set<OptimalityConstraint> rules;
+        // The domain values, in a fixed order.
+        String[] domainArray;
+        // The compiled conditional preference table: the parents in a fixed order,
+        // their nodes and positional weights, and the preferred clause for each parent assignment,
+        // indexed by the mixed-radix number whose digits are the domain indices of the parent values.
+        private String[] parentArray;
+        private Node[] parentNodes;
+        private int[] weights;
+        private Set<String>[] table;
+        // The index of each domain value within its domain, shared by every node of the graph.
+        private Map<String, Integer> domainIndices;
+
+        private Node(Set<String> domain, Set<String> parents, Set<String> lessImportant,
+                     Set<OptimalityConstraint> optimum) {
             this.domain = domain;
             this.parents = parents;
+            this.lessImportant = lessImportant;
             this.optimum = optimum;
         }
 
@@ -301,10 +685,27 @@ public class PreferenceGraph {
             return parents.stream();
         }
 
+        public Stream<String> lessImportant() {
+            return lessImportant.stream();
+        }
+
+        /**
+         * Returns the optimum set in long form, which lists every parent assignment explicitly.
+         * @return
+         */
         public Stream<OptimalityConstraint> optimum() {
             return optimum.stream();
         }
 
+        /**
+         * Returns the optimum set in compact form.
+         * @return
+         * @see PreferenceGraph#getCompactOptimumSet()
+         */
+        public Stream<OptimalityConstraint> rules() {
+            return rules.stream();
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -312,6 +713,7 @@ public class PreferenceGraph {
             Node that = (Node) o;
             return domain.equals(that.domain) &&
                     parents.equals(that.parents) &&
+                    lessImportant.equals(that.lessImportant) &&
                     optimum.equals(that.optimum);
         }
 
@@ -319,19 +721,203 @@ public class PreferenceGraph {
         public int hashCode() {
             int result = domain.hashCode();
             result = 31 * result + parents.hashCode();
+            result = 31 * result + lessImportant.hashCode();
             return 31 * result + optimum.hashCode();
         }
 
         /**
-         * Retrieves the applicable constraints (if any) for the specified <code>assignment</code>.
-         * An applicable constraint is an element of <em>optimum set</em> whose <em>condition</em>
-         * is a subset of <code>assignment</code>.
-         * In other words, an applicable constraint verifies the following predicate:
-         * <pre>{@code assignment.containsAll(constraint.condition)}</pre>
-         * @return
+         * Compiles the optimum set into {@link #table}, checking that exactly one clause applies
+         * to each parent assignment. An element of the optimum set applies to the parent assignments
+         * that contain its <em>condition</em>, which form a cube of the table: its cells are marked
+         * by enumerating the values of the parents outside the condition.
+         * After compilation, the optimum set is replaced with a long form view of the table,
+         * and the applicable constraints are kept as the compact form.
+         * @throws IllegalStateException if some parent assignment has no applicable clause,
+         * or more than one
+         */
+        void compile(Map<String, Node> nodeMap, Map<String, Integer> domainIndices, Map<String, String> valueVariables) {
+            this.domainIndices = domainIndices;
+            parentArray = parents.toArray(new String[0]);
+            parentNodes = new Node[parentArray.length];
+            weights = new int[parentArray.length];
+            Map<String, Integer> parentPositions = new HashMap<>();
+            long size = 1;
+            for (int i = 0; i < parentArray.length; i++) {
+                parentNodes[i] = nodeMap.get(parentArray[i]);
+                if (parentNodes[i] == null) {
+                    throw new IllegalStateException("unknown parent " + parentArray[i]);
+                }
+                parentPositions.put(parentArray[i], i);
+                weights[i] = (int) size;
+                size *= parentNodes[i].domainArray.length;
+                if (size > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("conditional preference table too large: " + parents);
+                }
+            }
+            // Generic arrays cannot be created: the raw array only ever holds sets of strings.
+            @SuppressWarnings({"rawtypes", "unchecked"})
+            Set<String>[] cells = new Set[(int) size];
+            table = cells;
+            int[] digits = new int[parentArray.length];
+            List<OptimalityConstraint> applicable = new ArrayList<>();
+            for (OptimalityConstraint constraint : optimum) {
+                // Fix the digits of the parents in the condition; -1 marks a free parent.
+                Arrays.fill(digits, -1);
+                boolean isApplicable = true;
+                for (String value : constraint.condition) {
+                    Integer position = parentPositions.get(valueVariables.get(value));
+                    if (position == null || digits[position] >= 0) {
+                        // A value of a non-parent, or a second value of the same parent: the condition never holds.
+                        isApplicable = false;
+                        break;
+                    }
+                    digits[position] = domainIndices.get(value);
+                }
+                if (isApplicable) {
+                    markCube(digits, constraint.clause);
+                    applicable.add(constraint);
+                }
+            }
+            for (int cell = 0; cell < table.length; cell++) {
+                if (table[cell] == null) {
+                    throw new IllegalStateException("no applicable preference for assignment " + assignment(cell));
+                }
+            }
+            // Drop the constraints whose cube is contained in the cube of another constraint with the same clause.
+            rules = applicable.stream()
+                    .filter(constraint -> applicable.stream().noneMatch(other -> other != constraint &&
+                            other.clause.equals(constraint.clause) &&
+                            other.condition.size() < constraint.condition.size() &&
+                            constraint.condition.containsAll(other.condition)))
+                    .collect(Collectors.collectingAndThen(Collectors.toSet(), Collections::unmodifiableSet));
+            optimum = new LongForm();
+        }
+
+        /**
+         * Assigns the clause to every cell of the cube defined by the specified digits.
          */
-        Stream<OptimalityConstraint> getApplicableConstraints(Collection<String> assignment) {
-            return optimum().filter(constraint -> assignment.containsAll(constraint.condition));
+        private void markCube(int[] digits, Set<String> clause) {
+            int base = 0;
+            int cubeSize = 1;
+            for (int i = 0; i < digits.length; i++) {
+                if (digits[i] >= 0) {
+                    base += digits[i] * weights[i];
+                } else {
+                    cubeSize *= parentNodes[i].domainArray.length;
+                }
+            }
+            for (int combination = 0; combination < cubeSize; combination++) {
+                int cell = base;
+                int rest = combination;
+                for (int i = 0; i < digits.length; i++) {
+                    if (digits[i] < 0) {
+                        int radix = parentNodes[i].domainArray.length;
+                        cell += (rest % radix) * weights[i];
+                        rest /= radix;
+                    }
+                }
+                if (table[cell] == null) {
+                    table[cell] = clause;
+                } else if (!table[cell].equals(clause)) {
+                    throw new IllegalStateException("conflicting preferences for assignment " + assignment(cell));
+                }
+            }
+        }
+
+        /**
+         * Returns the parent assignment of the specified cell of {@link #table}.
+         */
+        private List<String> assignment(int cell) {
+            List<String> assignment = new ArrayList<>(parentArray.length);
+            for (int i = 0; i < parentArray.length; i++) {
+                String[] parentDomain = parentNodes[i].domainArray;
+                assignment.add(parentDomain[(cell / weights[i]) % parentDomain.length]);
+            }
+            return assignment;
+        }
+
+        /**
+         * Returns the constraint of the long form for the specified cell of {@link #table}.
+         */
+        private OptimalityConstraint longFormConstraint(int cell) {
+            return OptimalityConstraint.builder()
+                    .addToCondition(assignment(cell))
+                    .addToClause(table[cell])
+                    .build();
+        }
+
+        /**
+         * An unmodifiable view of the optimum set in long form, with one constraint per cell of {@link #table}.
+         * Membership is checked by locating the cell of the condition, without generating any constraint.
+         */
+        private class LongForm extends AbstractSet<OptimalityConstraint> {
+            @Override
+            public Iterator<OptimalityConstraint> iterator() {
+                return IntStream.range(0, table.length).mapToObj(Node.this::longFormConstraint).iterator();
+            }
+
+            @Override
+            public int size() {
+                return table.length;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof OptimalityConstraint)) {
+                    return false;
+                }
+                OptimalityConstraint constraint = (OptimalityConstraint) o;
+                if (constraint.condition.size() != parentArray.length) {
+                    return false;
+                }
+                int cell = 0;
+                boolean[] isAssigned = new boolean[parentArray.length];
+                for (String value : constraint.condition) {
+                    int parent = parentPosition(value);
+                    if (parent < 0 || isAssigned[parent]) {
+                        return false;
+                    }
+                    isAssigned[parent] = true;
+                    cell += domainIndices.get(value) * weights[parent];
+                }
+                return table[cell].equals(constraint.clause);
+            }
+        }
+
+        /**
+         * Returns the position in {@link #parentArray} of the parent whose domain contains the specified value,
+         * or <code>-1</code> if no parent does.
+         */
+        private int parentPosition(String value) {
+            Integer index = domainIndices.get(value);
+            if (index == null) {
+                return -1;
+            }
+            for (int i = 0; i < parentArray.length; i++) {
+                String[] parentDomain = parentNodes[i].domainArray;
+                if (index < parentDomain.length && parentDomain[index].equals(value)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the preferred domain values given the values of the parents in <code>assignment</code>.
+         * @throws IllegalArgumentException if a parent is not assigned a value of its domain
+         */
+        Set<String> preferredValues(Map<String, String> assignment) {
+            int cell = 0;
+            for (int i = 0; i < parentArray.length; i++) {
+                String value = assignment.get(parentArray[i]);
+                Integer index = value != null ? domainIndices.get(value) : null;
+                if (index == null || !parentNodes[i].domainArray[index].equals(value)) {
+                    throw new IllegalArgumentException(
+                            String.format("invalid value for parent %s: %s", parentArray[i], value));
+                }
+                cell += index * weights[i];
+            }
+            return Collections.unmodifiableSet(table[cell]);
         }
 
         private static Builder builder() {
@@ -343,12 +929,15 @@ public class PreferenceGraph {
             private Stream.Builder<String> domainBuilder;
             // Builds the set of parents.
             private Stream.Builder<String> parentsBuilder;
+            // Builds the set of less important variables.
+            private Stream.Builder<String> lessImportantBuilder;
             // Builds the optimum
             private Stream.Builder<OptimalityConstraint> optimumBuilder;
 
             private Builder() {
                 domainBuilder = Stream.builder();
                 parentsBuilder = Stream.builder();
+                lessImportantBuilder = Stream.builder();
                 optimumBuilder = Stream.builder();
             }
 
@@ -363,11 +952,12 @@ public class PreferenceGraph {
             public Node build() {
                 Set<String> domain = domainBuilder.build().collect(Collectors.toSet());
                 Set<String> parents = parentsBuilder.build().collect(Collectors.toSet());
+                Set<String> lessImportant = lessImportantBuilder.build().collect(Collectors.toSet());
                 Set<OptimalityConstraint> optimum = optimumBuilder.build().collect(Collectors.toSet());
                 if (optimum.stream().anyMatch(constraint -> !domain.containsAll(constraint.clause))) {
                     throw new IllegalStateException();
                 }
-                return new Node(domain, parents, optimum);
+                return new Node(domain, parents, lessImportant, optimum);
             }
         }
 
@@ -0,0 +1,120 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import com.google.common.collect.ImmutableList;
+import exception.PreferenceReasonerException;
+import model.Outcome;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The Cartesian product of sets of partial outcomes over disjoint sets of variables,
+ * as an unmodifiable view whose elements are complete outcomes.
+ *
+ * <p>Outcomes are only built while iterating: the product is never stored, so that combining
+ * the results of independent components takes space proportional to the sum of their sizes.
+ */
+final class ProductOutcomeSet extends AbstractSet<Outcome> {
+    private List<List<Outcome>> factors;
+    private List<Set<Map<String, String>>> factorValuations;
+    private List<Set<String>> factorVariables;
+
+    /**
+     * @param factors the partial outcomes of each component; each <code>Set</code> is copied
+     * @param components the variables of each component, in the same order as <code>factors</code>
+     * @throws IllegalArgumentException if the two lists have different sizes
+     */
+    ProductOutcomeSet(List<? extends Set<Outcome>> factors, List<Set<String>> components) {
+        if (factors.size() != components.size()) {
+            throw new IllegalArgumentException("one set of outcomes is required for each component");
+        }
+        this.factors = factors.stream()
+                .map(ImmutableList::copyOf)
+                .collect(Collectors.toList());
+        factorValuations = factors.stream()
+                .map(factor -> factor.stream()
+                        .map(Outcome::getOutcomeAsValuationMap)
+                        .collect(Collectors.toSet()))
+                .collect(Collectors.toList());
+        factorVariables = ImmutableList.copyOf(components);
+    }
+
+    /**
+     * Returns the exact number of outcomes, which may exceed {@link #size()}.
+     * @return
+     */
+    BigInteger count() {
+        return factors.stream()
+                .map(factor -> BigInteger.valueOf(factor.size()))
+                .reduce(BigInteger.ONE, BigInteger::multiply);
+    }
+
+    @Override
+    public int size() {
+        BigInteger count = count();
+        return count.bitLength() < Integer.SIZE ? count.intValue() : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return factors.stream().anyMatch(List::isEmpty);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Outcome)) {
+            return false;
+        }
+        Map<String, String> valuation = ((Outcome) o).getOutcomeAsValuationMap();
+        if (valuation.size() != factorVariables.stream().mapToInt(Set::size).sum()) {
+            return false;
+        }
+        for (int i = 0; i < factors.size(); i++) {
+            Map<String, String> partialValuation = new HashMap<>();
+            for (String variable : factorVariables.get(i)) {
+                partialValuation.put(variable, valuation.get(variable));
+            }
+            if (!factorValuations.get(i).contains(partialValuation)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Iterator<Outcome> iterator() {
+        return new Iterator<Outcome>() {
+            // The position within each factor, as the digits of a mixed-radix counter.
+            private int[] positions = new int[factors.size()];
+            private boolean hasNext = !isEmpty();
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public Outcome next() {
+                if (!hasNext) {
+                    throw new NoSuchElementException();
+                }
+                Map<String, String> valuation = new HashMap<>();
+                for (int i = 0; i < positions.length; i++) {
+                    valuation.putAll(factors.get(i).get(positions[i]).getOutcomeAsValuationMap());
+                }
+                // Advance the counter; the iteration ends when every digit wraps around.
+                int i = 0;
+                while (i < positions.length && ++positions[i] == factors.get(i).size()) {
+                    positions[i++] = 0;
+                }
+                hasNext = i < positions.length;
+                try {
+                    return new Outcome(valuation);
+                } catch (PreferenceReasonerException e) {
+                    throw new IllegalStateException("invalid outcome", e);
+                }
+            }
+        };
+    }
+}
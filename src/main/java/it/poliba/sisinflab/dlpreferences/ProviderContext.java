@@ -0,0 +1,150 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import org.semanticweb.HermiT.ReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.OntologyCopy;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A provider ontology shared by the {@link OntologicalCPNet}s of many decision makers.
+ *
+ * <p>The provider ontology is copied into a thread-safe {@link OWLOntologyManager},
+ * checked for consistency and classified once, when the context is created.
+ * Ontological CP-nets built with {@link OntologicalCPNet#builder(CPNet, ProviderContext)} do not copy it:
+ * their constrained ontologies are <em>overlays</em>, which import the provider ontology
+ * and only contain the axioms generated from the preferences of their decision maker.
+ * Their consistency checks also skip the provider ontology, which is known to be consistent.
+ *
+ * <p>Overlays are kept by the shared manager until {@link OntologicalCPNet#dispose()} is invoked.
+ * The reasoners of the context are kept until {@link #dispose()} is invoked,
+ * which must happen after the ontological CP-nets built upon the context have been disposed.
+ */
+public final class ProviderContext {
+    private final OWLOntologyManager manager;
+    private final OWLOntology ontology;
+    private final IRI ontologyIRI;
+    private final OWLReasonerFactory reasonerFactory;
+    private final ReasonerPool reasonerPool;
+    private final AtomicLong overlayCount;
+    private final String ontologyHash;
+
+    private ProviderContext(OWLOntology providerOntology, OWLReasonerFactory reasonerFactory)
+            throws OWLOntologyCreationException {
+        ontologyIRI = providerOntology.getOntologyID().getOntologyIRI()
+                .orElseThrow(() -> new IllegalStateException("base ontology cannot be anonymous"));
+        manager = OWLManager.createConcurrentOWLOntologyManager();
+        ontology = manager.copyOntology(providerOntology, OntologyCopy.SHALLOW);
+        this.reasonerFactory = reasonerFactory;
+        // Check and classify the provider ontology, and keep the reasoner for later services.
+        OWLReasoner reasoner = reasonerFactory.createReasoner(ontology);
+        if (!reasoner.isConsistent()) {
+            reasoner.dispose();
+            throw new IllegalStateException("inconsistent base ontology");
+        }
+        reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+        reasonerPool = new ReasonerPool(
+                () -> reasonerFactory.createReasoner(ontology),
+                Runtime.getRuntime().availableProcessors());
+        reasonerPool.release(reasoner);
+        overlayCount = new AtomicLong();
+        ontologyHash = EntailmentCache.ontologyHash(ontology);
+    }
+
+    /**
+     * Creates a context for the specified provider ontology, with the default reasoner factory.
+     * @param providerOntology a consistent, named ontology; later changes to it do not affect the context
+     * @return
+     * @throws OWLOntologyCreationException if the provider ontology cannot be copied into the shared manager
+     * @throws IllegalStateException if the provider ontology is anonymous or inconsistent
+     */
+    public static ProviderContext create(OWLOntology providerOntology) throws OWLOntologyCreationException {
+        return create(providerOntology, new ReasonerFactory());
+    }
+
+    /**
+     * Creates a context for the specified provider ontology.
+     * The reasoner factory is also used by the ontological CP-nets built upon the context.
+     * @param providerOntology a consistent, named ontology; later changes to it do not affect the context
+     * @param reasonerFactory
+     * @return
+     * @throws OWLOntologyCreationException if the provider ontology cannot be copied into the shared manager
+     * @throws IllegalStateException if the provider ontology is anonymous or inconsistent
+     */
+    public static ProviderContext create(OWLOntology providerOntology, OWLReasonerFactory reasonerFactory)
+            throws OWLOntologyCreationException {
+        Objects.requireNonNull(providerOntology);
+        Objects.requireNonNull(reasonerFactory);
+        return new ProviderContext(providerOntology, reasonerFactory);
+    }
+
+    /**
+     * Returns the provider ontology, as stored in the shared manager.
+     * @return
+     */
+    public OWLOntology getOntology() {
+        return ontology;
+    }
+
+    public OWLReasonerFactory getReasonerFactory() {
+        return reasonerFactory;
+    }
+
+    /**
+     * Executes the specified reasoning service with a reasoner whose root ontology is the provider ontology.
+     * Reasoners are reused, so the classification computed when the context was created is not repeated;
+     * see {@link OntologicalCPNet#applyService(Function)} for the restrictions on <code>service</code>.
+     * @param service
+     * @param <T> the type of the value returned by <code>service</code>
+     * @return the value returned by <code>service</code>
+     */
+    public <T> T applyService(Function<OWLReasoner, T> service) {
+        return reasonerPool.apply(service);
+    }
+
+    /**
+     * Disposes of the reasoners kept by {@link #applyService(Function)}, starting with the one that classified
+     * the provider ontology. The ontological CP-nets built upon this context must be disposed first
+     * (see {@link OntologicalCPNet#dispose()}): their overlays import the provider ontology.
+     * Reasoning services executed afterwards create new reasoners.
+     */
+    public void dispose() {
+        reasonerPool.clear();
+    }
+
+    /**
+     * Returns the hash of the provider ontology, which identifies it in the keys of an {@link EntailmentCache}.
+     * @return
+     */
+    String getOntologyHash() {
+        return ontologyHash;
+    }
+
+    /**
+     * Creates an empty overlay, which imports the provider ontology, in the shared manager.
+     * @return
+     * @throws OWLOntologyCreationException
+     */
+    OWLOntology createOverlay() throws OWLOntologyCreationException {
+        IRI overlayIRI = IRI.create(String.format("%s/overlay/%d", ontologyIRI, overlayCount.incrementAndGet()));
+        OWLOntology overlay = manager.createOntology(overlayIRI);
+        manager.applyChange(new AddImport(overlay, manager.getOWLDataFactory().getOWLImportsDeclaration(ontologyIRI)));
+        return overlay;
+    }
+
+    /**
+     * Removes an overlay from the shared manager.
+     * @param overlay
+     */
+    void removeOverlay(OWLOntology overlay) {
+        if (!overlay.equals(ontology)) {
+            manager.removeOntology(overlay);
+        }
+    }
+}
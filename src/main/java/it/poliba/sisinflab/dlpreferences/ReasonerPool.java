@@ -0,0 +1,88 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A pool of idle {@link OWLReasoner}s over the same, unchanging root ontology.
+ * Each reasoner is lent to one thread at a time, so that reasoners keep the results of their
+ * preprocessing (e.g. the normalized axioms and the cached classification) between services.
+ *
+ * <p>This is a thread-safe implementation. When more threads need a reasoner than the pool holds,
+ * new reasoners are created; reasoners returned in excess of the capacity are disposed of.
+ */
+final class ReasonerPool {
+    private final Supplier<OWLReasoner> reasonerSupplier;
+    private final int capacity;
+    private final Deque<OWLReasoner> idleReasoners;
+    private final AtomicInteger idleCount;
+
+    /**
+     * @param reasonerSupplier creates a new reasoner when no idle reasoner is available
+     * @param capacity the maximum number of idle reasoners
+     * @throws IllegalArgumentException if <code>capacity</code> is not positive
+     */
+    ReasonerPool(Supplier<OWLReasoner> reasonerSupplier, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.reasonerSupplier = Objects.requireNonNull(reasonerSupplier);
+        this.capacity = capacity;
+        idleReasoners = new ConcurrentLinkedDeque<>();
+        idleCount = new AtomicInteger();
+    }
+
+    /**
+     * Adds a reasoner, which must not be used by the caller anymore, to the idle reasoners.
+     * The reasoner is disposed of if the pool is full.
+     * @param reasoner
+     */
+    void release(OWLReasoner reasoner) {
+        Objects.requireNonNull(reasoner);
+        if (idleCount.incrementAndGet() > capacity) {
+            idleCount.decrementAndGet();
+            reasoner.dispose();
+            return;
+        }
+        // The most recently used reasoner is lent first, since it is the most likely to be warm.
+        idleReasoners.push(reasoner);
+    }
+
+    /**
+     * Lends an idle reasoner, or a new one, to <code>service</code>, and takes it back when <code>service</code>
+     * returns or throws. The reasoner must not be disposed of by <code>service</code>.
+     * @param service
+     * @param <T> the type of the value returned by <code>service</code>
+     * @return the value returned by <code>service</code>
+     */
+    <T> T apply(Function<OWLReasoner, T> service) {
+        OWLReasoner reasoner = idleReasoners.poll();
+        if (reasoner == null) {
+            reasoner = reasonerSupplier.get();
+        } else {
+            idleCount.decrementAndGet();
+        }
+        try {
+            return service.apply(reasoner);
+        } finally {
+            release(reasoner);
+        }
+    }
+
+    /**
+     * Disposes of all idle reasoners.
+     */
+    void clear() {
+        OWLReasoner reasoner;
+        while ((reasoner = idleReasoners.poll()) != null) {
+            idleCount.decrementAndGet();
+            reasoner.dispose();
+        }
+    }
+}
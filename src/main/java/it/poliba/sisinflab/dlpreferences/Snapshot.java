@@ -0,0 +1,320 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import com.google.common.collect.ImmutableMap;
+import it.poliba.sisinflab.dlpreferences.except.SnapshotFormatException;
+import it.poliba.sisinflab.dlpreferences.sat.DimacsLiterals;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Reads and writes the binary snapshots of compiled CP-nets.
+ *
+ * <p>A snapshot starts with a header, made of a magic number, the format version, the kind of CP-net
+ * and the SHA-256 digests of the source files; the sections written by {@link CPNet} and
+ * {@link OntologicalCPNet} follow. All numbers are big-endian; strings are stored as their length
+ * in bytes followed by their UTF-8 encoding, and sequences as their length followed by their elements.
+ * Snapshots are read through a memory-mapped buffer.
+ */
+final class Snapshot {
+    private static final int MAGIC = 0x444C5053;  // "DLPS"
+    static final int VERSION = 2;
+
+    /**
+     * The kinds of CP-net that a snapshot may contain.
+     */
+    enum Kind {
+        CPNET, ONTOLOGICAL_CPNET
+    }
+
+    private Snapshot() {
+    }
+
+    /**
+     * Computes the SHA-256 digest of a file.
+     * @param file
+     * @return the digest, as a lowercase hexadecimal <code>String</code>
+     * @throws IOException if the file cannot be read
+     */
+    static String digest(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buffer = new byte[1 << 16];
+            while (in.read(buffer) >= 0) {
+                // The digest is updated while reading.
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Checks whether the source files recorded in a snapshot are unchanged.
+     * @param snapshot
+     * @return <code>false</code> if the snapshot has an unsupported format,
+     * or some of its source files are missing or changed
+     * @throws IOException if the snapshot cannot be read
+     */
+    static boolean isCurrent(Path snapshot) throws IOException {
+        Map<Path, String> sources;
+        try (Reader reader = Reader.open(snapshot)) {
+            reader.readKind();
+            sources = reader.readSources();
+        } catch (SnapshotFormatException e) {
+            return false;
+        }
+        for (Map.Entry<Path, String> source : sources.entrySet()) {
+            if (!Files.isRegularFile(source.getKey()) || !digest(source.getKey()).equals(source.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Writes a snapshot into a temporary file, which replaces the target file when the writer is closed,
+     * so that readers never see a partially written snapshot.
+     */
+    static final class Writer implements Closeable {
+        private final Path target;
+        private final Path temporary;
+        private final DataOutputStream out;
+        private boolean isComplete;
+
+        private Writer(Path target) throws IOException {
+            this.target = target.toAbsolutePath();
+            temporary = Files.createTempFile(this.target.getParent(), this.target.getFileName().toString(), ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)));
+        }
+
+        /**
+         * Creates a snapshot file, and writes its header.
+         * @param target
+         * @param kind
+         * @param sources the SHA-256 digest of each source file
+         * @return
+         * @throws IOException
+         */
+        static Writer create(Path target, Kind kind, Map<Path, String> sources) throws IOException {
+            Writer writer = new Writer(target);
+            writer.writeInt(MAGIC);
+            writer.writeInt(VERSION);
+            writer.writeInt(kind.ordinal());
+            writer.writeInt(sources.size());
+            for (Map.Entry<Path, String> source : sources.entrySet()) {
+                writer.writeString(source.getKey().toString());
+                writer.writeString(source.getValue());
+            }
+            return writer;
+        }
+
+        void writeInt(int value) throws IOException {
+            out.writeInt(value);
+        }
+
+        void writeString(String string) throws IOException {
+            writeBytes(string.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeStrings(Collection<String> strings) throws IOException {
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                writeString(string);
+            }
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        void writeClauses(List<DimacsLiterals> clauses) throws IOException {
+            out.writeInt(clauses.size());
+            for (DimacsLiterals clause : clauses) {
+                int[] literals = clause.stream().toArray();
+                out.writeInt(literals.length);
+                for (int literal : literals) {
+                    out.writeInt(literal);
+                }
+            }
+        }
+
+        /**
+         * Marks the snapshot as complete: only complete snapshots replace the target file when closed.
+         */
+        void commit() {
+            isComplete = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+                if (isComplete) {
+                    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot from a memory-mapped buffer.
+     * Any inconsistency in the data is reported as a {@link SnapshotFormatException}.
+     */
+    static final class Reader implements Closeable {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        /**
+         * Opens a snapshot file, and checks its magic number and version.
+         * @param snapshot
+         * @return
+         * @throws FileNotFoundException if <code>snapshot</code> is not a regular, readable file
+         * @throws SnapshotFormatException if the file is not a snapshot, or has a different version
+         * @throws IOException if an I/O error occurs
+         */
+        static Reader open(Path snapshot) throws IOException {
+            if (!Files.isRegularFile(snapshot) || !Files.isReadable(snapshot)) {
+                throw new FileNotFoundException(snapshot.toString());
+            }
+            Reader reader = new Reader(FileChannel.open(snapshot, StandardOpenOption.READ));
+            try {
+                if (reader.readInt() != MAGIC) {
+                    throw new SnapshotFormatException(snapshot, "not a snapshot");
+                }
+                int version = reader.readInt();
+                if (version != VERSION) {
+                    throw new SnapshotFormatException(snapshot,
+                            String.format("unsupported version %d, expected %d", version, VERSION));
+                }
+            } catch (IOException e) {
+                reader.close();
+                throw e;
+            }
+            return reader;
+        }
+
+        Kind readKind() throws SnapshotFormatException {
+            int ordinal = readInt();
+            if (ordinal < 0 || ordinal >= Kind.values().length) {
+                throw new SnapshotFormatException("unknown kind of CP-net: " + ordinal);
+            }
+            return Kind.values()[ordinal];
+        }
+
+        Map<Path, String> readSources() throws SnapshotFormatException {
+            int count = readLength();
+            ImmutableMap.Builder<Path, String> sources = ImmutableMap.builder();
+            for (int i = 0; i < count; i++) {
+                sources.put(Paths.get(readString()), readString());
+            }
+            return sources.build();
+        }
+
+        int readInt() throws SnapshotFormatException {
+            try {
+                return buffer.getInt();
+            } catch (BufferUnderflowException e) {
+                throw new SnapshotFormatException("unexpected end of snapshot");
+            }
+        }
+
+        /**
+         * Reads a non-negative length, which cannot exceed the remaining bytes.
+         */
+        int readLength() throws SnapshotFormatException {
+            int length = readInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new SnapshotFormatException("invalid length: " + length);
+            }
+            return length;
+        }
+
+        String readString() throws SnapshotFormatException {
+            return new String(readBytes(), StandardCharsets.UTF_8);
+        }
+
+        List<String> readStrings() throws SnapshotFormatException {
+            int count = readLength();
+            List<String> strings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                strings.add(readString());
+            }
+            return strings;
+        }
+
+        byte[] readBytes() throws SnapshotFormatException {
+            byte[] bytes = new byte[readLength()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Reads a sequence of clauses, checking that their literals are in the range <code>[-maxLiteral, maxLiteral]</code>.
+         */
+        List<DimacsLiterals> readClauses(int maxLiteral) throws SnapshotFormatException {
+            int count = readLength();
+            List<DimacsLiterals> clauses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int[] literals = new int[readLength()];
+                for (int j = 0; j < literals.length; j++) {
+                    literals[j] = readInt();
+                    if (literals[j] == 0 || Math.abs(literals[j]) > maxLiteral) {
+                        throw new SnapshotFormatException("invalid literal: " + literals[j]);
+                    }
+                }
+                clauses.add(DimacsLiterals.of(literals));
+            }
+            return clauses;
+        }
+
+        /**
+         * Checks that the whole snapshot has been read.
+         */
+        void requireEnd() throws SnapshotFormatException {
+            if (buffer.hasRemaining()) {
+                throw new SnapshotFormatException("unexpected data at the end of snapshot");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
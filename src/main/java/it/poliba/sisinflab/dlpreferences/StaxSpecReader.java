@@ -0,0 +1,189 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import it.poliba.sisinflab.dlpreferences.except.SpecFileParseException;
+import it.poliba.sisinflab.dlpreferences.nusmv.NuSMVModelGenerator;
+import util.Constants;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A streaming reader for CRISNER preference specification files, which builds the {@link PreferenceGraph}
+ * and the NuSMV base model of a CP-net in a single pass over the XML document.
+ * <p>
+ * Only the subset of the CRISNER syntax used by CP-nets is supported: preference variables with their domains,
+ * and preference statements made of a variable, its conditions and its orderings.
+ * Documents containing any other element (e.g. relative importance statements) are rejected,
+ * so that they can be handed over to CRISNER.
+ */
+final class StaxSpecReader {
+    private static final String SPECIFICATION = "PREFERENCE-SPECIFICATION";
+    private static final String VARIABLE = "PREFERENCE-VARIABLE";
+    private static final String VARIABLE_NAME = "VARIABLE-NAME";
+    private static final String DOMAIN_VALUE = "DOMAIN-VALUE";
+    private static final String STATEMENT = "PREFERENCE-STATEMENT";
+    private static final String STATEMENT_ID = "STATEMENT-ID";
+    private static final String CONDITION = "CONDITION";
+    private static final String PREFERENCE = "PREFERENCE";
+
+    private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+    private final String fileName;
+    private final PreferenceGraph.Builder graphBuilder;
+    private final NuSMVModelGenerator.ModelBuilder modelBuilder;
+
+    private StaxSpecReader(String fileName) {
+        this.fileName = fileName;
+        graphBuilder = PreferenceGraph.builder();
+        modelBuilder = NuSMVModelGenerator.modelBuilder();
+    }
+
+    /**
+     * Reads a preference specification file.
+     *
+     * @param xmlPrefSpec
+     * @return the preference graph and the NuSMV base model of the specification, or an empty <code>Optional</code>
+     * if the file is not well-formed or uses elements that are not supported by this reader
+     * @throws SpecFileParseException if a condition or an ordering is malformed
+     * @throws FileNotFoundException if <code>xmlPrefSpec</code> is not a regular, readable file
+     * @throws IOException if an I/O error occurs while reading the file
+     */
+    static Optional<Result> read(Path xmlPrefSpec) throws SpecFileParseException, IOException {
+        if (!Files.isRegularFile(xmlPrefSpec) || !Files.isReadable(xmlPrefSpec)) {
+            throw new FileNotFoundException(xmlPrefSpec.toString());
+        }
+        StaxSpecReader specReader = new StaxSpecReader(xmlPrefSpec.toAbsolutePath().toString());
+        try (InputStream in = Files.newInputStream(xmlPrefSpec)) {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                specReader.readSpecification(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            return Optional.empty();
+        }
+        return Optional.of(new Result(specReader.graphBuilder.build(), specReader.modelBuilder.build()));
+    }
+
+    private void readSpecification(XMLStreamReader reader) throws XMLStreamException, SpecFileParseException {
+        reader.nextTag();
+        requireElement(reader, SPECIFICATION);
+        while (reader.nextTag() == XMLStreamReader.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case VARIABLE:
+                    readVariable(reader);
+                    break;
+                case STATEMENT:
+                    readStatement(reader);
+                    break;
+                default:
+                    throw unsupported(reader);
+            }
+        }
+    }
+
+    private void readVariable(XMLStreamReader reader) throws XMLStreamException {
+        String variableName = null;
+        Set<String> domainValues = new LinkedHashSet<>();
+        while (reader.nextTag() == XMLStreamReader.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case VARIABLE_NAME:
+                    variableName = reader.getElementText().trim();
+                    break;
+                case DOMAIN_VALUE:
+                    domainValues.add(reader.getElementText().trim());
+                    break;
+                default:
+                    throw unsupported(reader);
+            }
+        }
+        if (variableName == null) {
+            throw new XMLStreamException("missing variable name", reader.getLocation());
+        }
+        graphBuilder.addDomainValues(variableName, domainValues);
+        modelBuilder.addVariable(variableName, domainValues);
+    }
+
+    private void readStatement(XMLStreamReader reader) throws XMLStreamException, SpecFileParseException {
+        String variableName = null;
+        List<String> conditions = new ArrayList<>();
+        List<String> orderings = new ArrayList<>();
+        while (reader.nextTag() == XMLStreamReader.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case STATEMENT_ID:
+                    reader.getElementText();
+                    break;
+                case VARIABLE:
+                    variableName = reader.getElementText().trim();
+                    break;
+                case CONDITION:
+                    conditions.add(reader.getElementText().trim());
+                    break;
+                case PREFERENCE:
+                    orderings.add(reader.getElementText().trim());
+                    break;
+                default:
+                    throw unsupported(reader);
+            }
+        }
+        if (variableName == null) {
+            throw new XMLStreamException("missing statement variable", reader.getLocation());
+        }
+        PreferenceGraph.addStatement(graphBuilder, fileName, variableName, conditions, orderings);
+        for (String ordering : orderings) {
+            String[] values = ordering.split(Constants.PREFERENCE_SYMBOL_IN_XML);
+            if (values.length != 2) {
+                throw new SpecFileParseException(fileName, String.format("bad preference specification: '%s'", ordering));
+            }
+            modelBuilder.addPreference(variableName, conditions, Collections.emptySet(), values[0], values[1]);
+        }
+    }
+
+    private static void requireElement(XMLStreamReader reader, String localName) throws XMLStreamException {
+        if (!reader.isStartElement() || !reader.getLocalName().equals(localName)) {
+            throw unsupported(reader);
+        }
+    }
+
+    private static XMLStreamException unsupported(XMLStreamReader reader) {
+        return new XMLStreamException(
+                String.format("unsupported element '%s'", reader.getLocalName()), reader.getLocation());
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * The outcome of a successful read.
+     */
+    static final class Result {
+        private final PreferenceGraph graph;
+        private final List<String> baseModel;
+
+        private Result(PreferenceGraph graph, List<String> baseModel) {
+            this.graph = graph;
+            this.baseModel = baseModel;
+        }
+
+        PreferenceGraph getGraph() {
+            return graph;
+        }
+
+        List<String> getBaseModel() {
+            return baseModel;
+        }
+    }
+}
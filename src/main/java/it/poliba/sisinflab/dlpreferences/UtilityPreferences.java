@@ -0,0 +1,129 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import model.Outcome;
+
+import java.util.*;
+
+/**
+ * Quantitative preferences, expressed as integer weights (utilities) attached to domain values
+ * and to combinations of domain values.
+ * The utility of an outcome is the sum of the weights of the domain values and combinations
+ * it contains. For example, the following preferences
+ * <pre>{@code
+ * UtilityPreferences.builder()
+ *         .addWeight("a1", 5)
+ *         .addWeight("b2", 2)
+ *         .addWeight(-4, "a1", "b2")
+ *         .build();
+ * }</pre>
+ * assign utility 5 to the outcome <i>a1 b1</i>, utility 3 to the outcome <i>a1 b2</i>,
+ * and utility 2 to the outcome <i>a2 b2</i>.
+ *
+ * @see OntologicalCPNet#bestByUtility(UtilityPreferences, int)
+ */
+public class UtilityPreferences {
+    /**
+     * The weight of each combination of domain values; single domain values are stored as singletons.
+     */
+    private Map<Set<String>, Integer> weights;
+
+    private UtilityPreferences(Map<Set<String>, Integer> weights) {
+        this.weights = weights;
+    }
+
+    /**
+     * Returns the weight of each combination of domain values.
+     * Weights attached to single domain values are mapped to singletons.
+     * @return an immutable <code>Map</code>
+     */
+    public Map<Set<String>, Integer> getWeights() {
+        return weights;
+    }
+
+    /**
+     * Computes the utility of the specified outcome.
+     * @param outcome
+     * @return
+     */
+    public long utility(Outcome outcome) {
+        Collection<String> values = Objects.requireNonNull(outcome).getOutcomeAsValuationMap().values();
+        return weights.entrySet().stream()
+                .filter(entry -> values.containsAll(entry.getKey()))
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UtilityPreferences other = (UtilityPreferences) o;
+        return weights.equals(other.weights);
+    }
+
+    @Override
+    public int hashCode() {
+        return weights.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return weights.toString();
+    }
+
+    /**
+     * A builder for {@link UtilityPreferences}.
+     */
+    public static class Builder {
+        private Map<Set<String>, Integer> weights;
+
+        private Builder() {
+            weights = new LinkedHashMap<>();
+        }
+
+        /**
+         * Attaches a weight to the specified domain value.
+         * @param domainValue
+         * @param weight
+         * @return
+         * @throws IllegalStateException if a weight was already attached to <code>domainValue</code>
+         */
+        public Builder addWeight(String domainValue, int weight) {
+            return addWeight(weight, domainValue);
+        }
+
+        /**
+         * Attaches a weight to the combination of the specified domain values,
+         * that is, to the outcomes that contain all of them.
+         * @param weight
+         * @param domainValues
+         * @return
+         * @throws IllegalArgumentException if <code>domainValues</code> is empty
+         * @throws IllegalStateException if a weight was already attached to the same combination
+         */
+        public Builder addWeight(int weight, String... domainValues) {
+            Set<String> combination = ImmutableSet.copyOf(domainValues);
+            if (combination.isEmpty()) {
+                throw new IllegalArgumentException("empty combination");
+            }
+            if (weights.putIfAbsent(combination, weight) != null) {
+                throw new IllegalStateException(String.format("weight for %s already set", combination));
+            }
+            return this;
+        }
+
+        /**
+         * Builds an immutable {@link UtilityPreferences} object.
+         * @return
+         */
+        public UtilityPreferences build() {
+            return new UtilityPreferences(ImmutableMap.copyOf(weights));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package it.poliba.sisinflab.dlpreferences.except;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Signals that a file is not a valid snapshot of a CP-net, or that it was written
+ * by an incompatible version of the snapshot format.
+ */
+public class SnapshotFormatException extends IOException {
+    public SnapshotFormatException(Path file, String message) {
+        this(String.format("invalid snapshot '%s': %s", file, message));
+    }
+
+    public SnapshotFormatException(String message) {
+        super(message);
+    }
+}
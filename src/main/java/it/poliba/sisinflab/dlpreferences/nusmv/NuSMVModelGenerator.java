@@ -2,15 +2,14 @@ package it.poliba.sisinflab.dlpreferences.nusmv;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
 import model.Outcome;
 import model.PreferenceSpecification;
 import model.PreferenceStatement;
 import model.PreferenceVariable;
 import util.Constants;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -26,69 +25,27 @@ public class NuSMVModelGenerator {
      * as a <code>List</code> of lines
      */
     public static List<String> baseModel(PreferenceSpecification prefSpec) {
-        Map<String, String> varsToDomains = prefSpec.getVariables().stream()
-                .collect(Collectors.toMap(
-                        PreferenceVariable::getVariableName,
-                        prefVar -> enumType(prefVar.getDomainValues())));
-        ImmutableListMultimap.Builder<String, String> expressionBuilder =
-                ImmutableListMultimap.builder();
+        ModelBuilder modelBuilder = modelBuilder();
+        for (PreferenceVariable prefVar : prefSpec.getVariables()) {
+            modelBuilder.addVariable(prefVar.getVariableName(), prefVar.getDomainValues());
+        }
         for (PreferenceStatement statement : prefSpec.getStatements()) {
             statement.makeValid();
             for (String ordering : statement.getIntravarPreferences()) {
-                String superior = ordering.split(Constants.PREFERENCE_SYMBOL_IN_XML)[0];
-                String inferior = ordering.split(Constants.PREFERENCE_SYMBOL_IN_XML)[1];
-                String inferiorValueAssigment = String.format("%s=%s", statement.getVariableName(), inferior);
-                Stream<String> nonEmptyConditions = statement.getParentAssignments().stream()
-                        .filter(condition -> condition.trim().length() > 0);
-                Map<Boolean, List<String>> valueToInputVar = varsToDomains.keySet().stream()
-                        .collect(Collectors.partitioningBy(
-                                varName -> statement.getLessImpVariables().contains(varName) ||
-                                        varName.equals(statement.getVariableName())));
-                Stream<String> inputVarAssignments = valueToInputVar.entrySet().stream()
-                        .flatMap(entry -> entry.getValue().stream()
-                                .map(varName -> String.format("ch%s=%s", varName, entry.getKey() ? "1" : "0")));
-                String leftExpression = Stream.concat(
-                        Stream.of(inferiorValueAssigment),
-                        Stream.concat(nonEmptyConditions, inputVarAssignments)
-                ).collect(Collectors.joining(" & "));
-                expressionBuilder.put(
+                String[] values = ordering.split(Constants.PREFERENCE_SYMBOL_IN_XML);
+                modelBuilder.addPreference(
                         statement.getVariableName(),
-                        String.format("%s : %s;", leftExpression, superior));
-                for (String unimportantVarName : statement.getLessImpVariables()) {
-                    expressionBuilder.put(
-                            unimportantVarName,
-                            String.format("%s : %s;", leftExpression, varsToDomains.get(unimportantVarName)));
-                }
+                        statement.getParentAssignments(),
+                        statement.getLessImpVariables(),
+                        values[0],
+                        values[1]);
             }
         }
-        ImmutableListMultimap<String, String> caseBodyExpressions = expressionBuilder.build();
-
-        String indentStr = "  ";
-        Stream<String> assignList = varsToDomains.keySet().stream()
-                .flatMap(varName -> {
-                    Stream<String> opening = Stream.of(
-                            indentStr + String.format("next(%s) :=", varName),
-                            indentStr + indentStr + "case");
-                    Stream<String> caseBody = caseBodyExpressions.get(varName).stream()
-                            .map(expr -> indentStr + indentStr + indentStr + expr);
-                    Stream<String> closing = Stream.of(
-                            indentStr + indentStr + indentStr + String.format("TRUE : %s;", varName),
-                            indentStr + indentStr + "esac;");
-                    return Stream.concat(opening, Stream.concat(caseBody, closing));
-                });
-
-        Stream<String> varList = varsToDomains.entrySet().stream()
-                .map(entry -> indentStr + String.format("%s : %s;", entry.getKey(), entry.getValue()));
-
-        Stream<String> ivarList = varsToDomains.keySet().stream()
-                .map(varName -> indentStr + String.format("ch%s : {0,1};", varName));
-
-        return ImmutableList.<String>builder()
-                .add("MODULE main")
-                .add("VAR").addAll(varList.iterator())
-                .add("IVAR").addAll(ivarList.iterator())
-                .add("ASSIGN").addAll(assignList.iterator())
-                .build();
+        return modelBuilder.build();
+    }
+
+    public static ModelBuilder modelBuilder() {
+        return new ModelBuilder();
     }
 
     /**
@@ -104,13 +61,30 @@ public class NuSMVModelGenerator {
                 outcomeExpr(better));
     }
 
+    /**
+     * Translates a partial assignment into a NuSMV invariant, which restricts the state space
+     * to the outcomes that agree with the assignment.
+     *
+     * @param assignments a <code>Map</code> from variable names to domain values
+     * @return a <code>String</code> representation of the equivalent NuSMV invariant,
+     * or an empty <code>Optional</code> if <code>assignments</code> is empty
+     */
+    public static Optional<String> invariantSpec(Map<String, String> assignments) {
+        if (assignments.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(assignments.entrySet().stream()
+                .map(entry -> String.format("%s=%s", entry.getKey(), entry.getValue()))
+                .collect(Collectors.joining(" & ", "INVAR (", ")")));
+    }
+
     /**
      * Translates a sequence of <code>String</code>s into a NuSMV enumeration type.
      *
      * @param values
      * @return a <code>String</code> representation of the equivalent NuSMV enumeration type
      */
-    private static String enumType(Set<String> values) {
+    private static String enumType(Collection<String> values) {
         return values.stream()
                 .collect(Collectors.joining(",", "{", "}"));
     }
@@ -126,4 +100,143 @@ public class NuSMVModelGenerator {
                 .map(entry -> String.format("%s=%s", entry.getKey(), entry.getValue()))
                 .collect(Collectors.joining(" & "));
     }
+
+    /**
+     * Collects preference variables and conditional preferences, and translates them into a NuSMV model.
+     * <p>
+     * Preferences may be added before the variables they refer to: expressions are only generated by {@link #build()},
+     * when all the variables are known.
+     */
+    public static class ModelBuilder {
+        private static final String INDENT = "  ";
+
+        // Maps variable names to their NuSMV enumeration types, in insertion order.
+        private Map<String, String> varsToDomains;
+        private List<Preference> preferences;
+
+        private ModelBuilder() {
+            varsToDomains = new LinkedHashMap<>();
+            preferences = new ArrayList<>();
+        }
+
+        /**
+         * Adds a preference variable.
+         *
+         * @param variableName
+         * @param domainValues
+         * @return this builder
+         * @throws IllegalStateException if <code>variableName</code> has already been added
+         */
+        public ModelBuilder addVariable(String variableName, Collection<String> domainValues) {
+            if (varsToDomains.putIfAbsent(Objects.requireNonNull(variableName), enumType(domainValues)) != null) {
+                throw new IllegalStateException(String.format("duplicate variable '%s'", variableName));
+            }
+            return this;
+        }
+
+        /**
+         * Adds the conditional preference <code>superior &gt; inferior</code> over the domain of a variable.
+         *
+         * @param variableName
+         * @param conditions the parent assignments, in the form <code>X=v</code>; empty conditions are ignored
+         * @param lessImpVariables the variables that are less important than <code>variableName</code>
+         * @param superior
+         * @param inferior
+         * @return this builder
+         */
+        public ModelBuilder addPreference(String variableName, Collection<String> conditions,
+                                          Collection<String> lessImpVariables, String superior, String inferior) {
+            preferences.add(new Preference(
+                    Objects.requireNonNull(variableName),
+                    conditions.stream()
+                            .filter(condition -> condition.trim().length() > 0)
+                            .collect(Collectors.toList()),
+                    ImmutableSet.copyOf(lessImpVariables),
+                    Objects.requireNonNull(superior),
+                    Objects.requireNonNull(inferior)));
+            return this;
+        }
+
+        /**
+         * @return a <code>String</code> representation of the NuSMV model, as a <code>List</code> of lines
+         * @throws IllegalStateException if a preference refers to a variable that has not been added
+         */
+        public List<String> build() {
+            ImmutableListMultimap.Builder<String, String> expressionBuilder = ImmutableListMultimap.builder();
+            for (Preference preference : preferences) {
+                StringBuilder leftExpression = new StringBuilder()
+                        .append(preference.variableName).append('=').append(preference.inferior);
+                for (String condition : preference.conditions) {
+                    leftExpression.append(" & ").append(condition);
+                }
+                for (String varName : varsToDomains.keySet()) {
+                    boolean changed = varName.equals(preference.variableName) ||
+                            preference.lessImpVariables.contains(varName);
+                    leftExpression.append(" & ch").append(varName).append(changed ? "=1" : "=0");
+                }
+                expressionBuilder.put(
+                        checkVariable(preference.variableName),
+                        String.format("%s : %s;", leftExpression, preference.superior));
+                for (String unimportantVarName : preference.lessImpVariables) {
+                    expressionBuilder.put(
+                            unimportantVarName,
+                            String.format("%s : %s;", leftExpression, varsToDomains.get(checkVariable(unimportantVarName))));
+                }
+            }
+            ImmutableListMultimap<String, String> caseBodyExpressions = expressionBuilder.build();
+
+            Stream<String> assignList = varsToDomains.keySet().stream()
+                    .flatMap(varName -> {
+                        Stream<String> opening = Stream.of(
+                                INDENT + String.format("next(%s) :=", varName),
+                                INDENT + INDENT + "case");
+                        Stream<String> caseBody = caseBodyExpressions.get(varName).stream()
+                                .map(expr -> INDENT + INDENT + INDENT + expr);
+                        Stream<String> closing = Stream.of(
+                                INDENT + INDENT + INDENT + String.format("TRUE : %s;", varName),
+                                INDENT + INDENT + "esac;");
+                        return Stream.concat(opening, Stream.concat(caseBody, closing));
+                    });
+
+            Stream<String> varList = varsToDomains.entrySet().stream()
+                    .map(entry -> INDENT + String.format("%s : %s;", entry.getKey(), entry.getValue()));
+
+            Stream<String> ivarList = varsToDomains.keySet().stream()
+                    .map(varName -> INDENT + String.format("ch%s : {0,1};", varName));
+
+            return ImmutableList.<String>builder()
+                    .add("MODULE main")
+                    .add("VAR").addAll(varList.iterator())
+                    .add("IVAR").addAll(ivarList.iterator())
+                    .add("ASSIGN").addAll(assignList.iterator())
+                    .build();
+        }
+
+        private String checkVariable(String variableName) {
+            if (!varsToDomains.containsKey(variableName)) {
+                throw new IllegalStateException(String.format("undefined variable '%s'", variableName));
+            }
+            return variableName;
+        }
+    }
+
+    /**
+     * A single ordering of a conditional preference statement.
+     */
+    private static class Preference {
+        private final String variableName;
+        private final List<String> conditions;
+        private final Set<String> lessImpVariables;
+        private final String superior;
+        private final String inferior;
+
+        private Preference(String variableName, List<String> conditions, Set<String> lessImpVariables,
+                           String superior, String inferior) {
+            this.variableName = variableName;
+            this.conditions = conditions;
+            this.lessImpVariables = lessImpVariables;
+            this.superior = superior;
+            this.inferior = inferior;
+        }
+    }
 }
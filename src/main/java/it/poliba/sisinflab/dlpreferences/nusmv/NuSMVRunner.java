@@ -17,6 +17,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -39,6 +40,9 @@ public class NuSMVRunner {
 
     private NuSMVModelAdvisor nma;
     private Path modelPath;
+    // Identifies the NuSMV binary in the keys of the verification cache.
+    private String fingerprint;
+    private VerificationCache verificationCache;
 
     /**
      * Creates a <code>NuSMVRunner</code> instance that verifies NuSMV models
@@ -52,6 +56,10 @@ public class NuSMVRunner {
      * NuSMVRunner may need to store an on-disk representation of the model being verified,
      * in the form of a .smv file in the system temp directory.
      * The system temp directory is specified by the JRE property <code>java.io.tmpdir</code>.
+     * <p>
+     * The NuSMV installation is checked by verifying a trivial model, unless the same binary
+     * (with the same path, size and modification time) was already checked, in this process or in a previous one;
+     * see {@link #verifyCached(List)}.
      *
      * @throws IllegalStateException if the PATH environment variable is not defined.
      * @throws FileNotFoundException if none of the directories specified by the system's PATH environment variable
@@ -79,6 +87,8 @@ public class NuSMVRunner {
         } else if (!Files.isExecutable(nusmvExec)) {
             throw new FileNotFoundException(nusmvExec.toString());
         }
+        fingerprint = VerificationCache.fingerprint(nusmvExec);
+        verificationCache = VerificationCache.shared();
         // Set up the NuSMV executor.
         modelPath = Files.createTempFile(SMV_FILE_PREFIX, SMV_FILE_SUFFIX);
         modelPath.toFile().deleteOnExit();
@@ -100,7 +110,7 @@ public class NuSMVRunner {
         // By setting it to false, NuSMV is executed as an external process.
         NuSMVExecutor.jna = false;
         // Check the local NuSMV installation by verifying a trivial model.
-        verify(TRIVIAL_MODEL);
+        verifyCached(TRIVIAL_MODEL);
     }
 
     /**
@@ -137,12 +147,13 @@ public class NuSMVRunner {
      * This is a convenience method that stores <code>model</code> as a .smv file
      * in the system temp directory, then invokes {@link #verify(Path)}.
      * The system temp directory is specified by the JRE property <code>java.io.tmpdir</code>.
+     * Concurrent calls are serialized, since they share the same .smv file.
      *
      * @param model a <code>List</code> of lines representing the NuSMV model
      * @throws MalformedNuSMVModelException if <code>model</code> is not a valid NuSMV model
      * @return
      */
-    public boolean verify(List<String> model) {
+    public synchronized boolean verify(List<String> model) {
         try {
             Files.write(modelPath, model);
             return verify(modelPath);
@@ -150,6 +161,32 @@ public class NuSMVRunner {
             throw new UncheckedIOException(e);
         }
     }
+
+    /**
+     * Checks whether the CTL and LTL properties of a NuSMV model are all true, like {@link #verify(List)},
+     * unless the same model was already verified by the same NuSMV binary.
+     * <p>
+     * The outcome is cached, in memory and in a small on-disk cache in the system temp directory,
+     * under a key made of the identity of the NuSMV binary and a hash of <code>model</code>.
+     * This is meant for models that are verified over and over across runs, such as the trivial model
+     * of the installation check and the base models of CP-nets; one-off models, such as dominance queries,
+     * should be verified with {@link #verify(List)}.
+     *
+     * @param model a <code>List</code> of lines representing the NuSMV model
+     * @throws MalformedNuSMVModelException if <code>model</code> is not a valid NuSMV model
+     * @return
+     */
+    public boolean verifyCached(List<String> model) {
+        String key = VerificationCache.key(fingerprint, model);
+        Optional<Boolean> cachedOutcome = verificationCache.get(key);
+        if (cachedOutcome.isPresent()) {
+            return cachedOutcome.get();
+        }
+        boolean outcome = verify(model);
+        verificationCache.put(key, outcome);
+        return outcome;
+    }
+
     /**
      * Checks whether the CTL and LTL properties of a NuSMV model are all true.
      *
@@ -175,7 +212,7 @@ public class NuSMVRunner {
      * {@link it.unibg.nuseen.modeladvisor.metaproperties.MetaPropertyChecker} enabled
      * @return
      */
-    private boolean loadAndVerify(ModelLoader modelLoader) {
+    private synchronized boolean loadAndVerify(ModelLoader modelLoader) {
         // Evaluate the model.
         try {
             modelLoader.loadModel();
@@ -0,0 +1,201 @@
+package it.poliba.sisinflab.dlpreferences.nusmv;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Remembers the outcome of NuSMV verifications, so that a model is verified once
+ * by a given NuSMV binary, within a process and across processes.
+ * <p>
+ * Outcomes are keyed by a fingerprint of the NuSMV binary (its real path, size and modification time)
+ * and by the SHA-256 hash of the model text. Replacing the binary, or changing a single character
+ * of the model, leads to a new verification.
+ * <p>
+ * Outcomes are kept in a bounded in-memory cache, backed by a directory where each outcome is stored
+ * in a one-byte file named after its key. The directory is only readable by its owner;
+ * if it cannot be created, or belongs to another user, only the in-memory cache is used.
+ * Only successful verifications are cached: malformed models are rejected every time.
+ */
+final class VerificationCache {
+    private static final int MEMORY_CAPACITY = 4096;
+    static final int DISK_CAPACITY = 1024;
+    // Pruning leaves room for new entries, so that it does not run on every write once the directory is full.
+    private static final int PRUNED_SIZE = DISK_CAPACITY * 3 / 4;
+    private static final byte TRUE = '1';
+    private static final byte FALSE = '0';
+
+    private static final VerificationCache SHARED = new VerificationCache(
+            Paths.get(System.getProperty("java.io.tmpdir"), "dlpreferences-nusmv-" + System.getProperty("user.name")));
+
+    private final Cache<String, Boolean> memory;
+    private final Optional<Path> directory;
+    // The number of entries on disk, as far as this instance knows.
+    private final AtomicInteger diskEntries;
+
+    /**
+     * @param directory the directory of the on-disk cache, which is created if missing
+     */
+    VerificationCache(Path directory) {
+        memory = CacheBuilder.newBuilder().maximumSize(MEMORY_CAPACITY).build();
+        this.directory = prepare(directory);
+        diskEntries = new AtomicInteger(this.directory.map(d -> prune(d, DISK_CAPACITY)).orElse(0));
+    }
+
+    /**
+     * Returns the cache shared by all <code>NuSMVRunner</code> instances,
+     * whose directory is in the system temp directory.
+     * @return
+     */
+    static VerificationCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Computes the fingerprint of a NuSMV binary.
+     * @param nusmvExec
+     * @return
+     * @throws IOException if the attributes of <code>nusmvExec</code> cannot be read
+     */
+    static String fingerprint(Path nusmvExec) throws IOException {
+        Path realPath = nusmvExec.toRealPath();
+        BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+        return String.format("%s:%d:%d", realPath, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Computes the key of a model verified by a NuSMV binary.
+     * @param fingerprint the fingerprint of the NuSMV binary
+     * @param model the lines of the model
+     * @return
+     */
+    static String key(String fingerprint, List<String> model) {
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(fingerprint, StandardCharsets.UTF_8)
+                .putByte((byte) 0);
+        for (String line : model) {
+            hasher.putString(line, StandardCharsets.UTF_8).putByte((byte) '\n');
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Looks up the outcome of a verification, first in memory, then on disk.
+     * @param key
+     * @return
+     */
+    Optional<Boolean> get(String key) {
+        Boolean outcome = memory.getIfPresent(key);
+        if (outcome == null && directory.isPresent()) {
+            try {
+                byte[] content = Files.readAllBytes(directory.get().resolve(key));
+                if (content.length == 1 && (content[0] == TRUE || content[0] == FALSE)) {
+                    outcome = content[0] == TRUE;
+                    memory.put(key, outcome);
+                }
+            } catch (IOException e) {
+                // A missing or unreadable entry is a cache miss.
+            }
+        }
+        return Optional.ofNullable(outcome);
+    }
+
+    /**
+     * Stores the outcome of a verification in memory and on disk.
+     * Entries are written into a temporary file which is moved into place,
+     * so that concurrent processes never read a partial entry.
+     * If the on-disk cache grows beyond its capacity, the least recently written entries are deleted.
+     * @param key
+     * @param outcome
+     */
+    void put(String key, boolean outcome) {
+        memory.put(key, outcome);
+        if (!directory.isPresent()) {
+            return;
+        }
+        try {
+            Path temporary = Files.createTempFile(directory.get(), key, ".tmp");
+            try {
+                Files.write(temporary, new byte[]{outcome ? TRUE : FALSE});
+                Files.move(temporary, directory.get().resolve(key),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // The on-disk cache is best-effort: the outcome is still cached in memory.
+            return;
+        }
+        if (diskEntries.incrementAndGet() > DISK_CAPACITY) {
+            synchronized (diskEntries) {
+                if (diskEntries.get() > DISK_CAPACITY) {
+                    diskEntries.set(prune(directory.get(), PRUNED_SIZE));
+                }
+            }
+        }
+    }
+
+    private static Optional<Path> prepare(Path directory) {
+        try {
+            if (!Files.isDirectory(directory)) {
+                if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                    Files.createDirectories(directory,
+                            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectories(directory);
+                }
+            }
+            // Do not trust entries written by other users.
+            if (!Files.getOwner(directory).getName().equals(System.getProperty("user.name"))) {
+                return Optional.empty();
+            }
+            return Optional.of(directory);
+        } catch (IOException | UnsupportedOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Keeps the on-disk cache small, by deleting the least recently written entries in excess of <code>size</code>.
+     * @return the number of entries left, or an estimate if the directory cannot be listed
+     */
+    private static int prune(Path directory, int size) {
+        try (Stream<Path> entries = Files.list(directory)) {
+            List<Path> files = entries.collect(Collectors.toList());
+            if (files.size() <= size) {
+                return files.size();
+            }
+            files.sort(Comparator.comparing(VerificationCache::lastModifiedTime));
+            for (Path file : files.subList(0, files.size() - size)) {
+                Files.deleteIfExists(file);
+            }
+            return size;
+        } catch (IOException | UncheckedIOException e) {
+            // Pruning is best-effort.
+            return size;
+        }
+    }
+
+    private static FileTime lastModifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
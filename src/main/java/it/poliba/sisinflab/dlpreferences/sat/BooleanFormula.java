@@ -3,20 +3,80 @@ package it.poliba.sisinflab.dlpreferences.sat;
 import java.util.*;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * A boolean formula in conjunctive normal form.
+ *
+ * <p>Clauses are stored in a flat, compressed layout: the literals of all clauses are appended
+ * to a single <code>int[]</code> pool, and a second array stores the offset of each clause in the pool.
+ * Each clause is stored in canonical form (sorted by variable, without duplicate literals),
+ * and duplicate clauses are discarded by means of a 64-bit hash index.
  */
 public class BooleanFormula {
+    private static final int INITIAL_CLAUSE_CAPACITY = 16;
+    private static final int INITIAL_LITERAL_CAPACITY = 64;
+
+    /**
+     * A consumer of clauses stored in the literal pool of a formula.
+     * @param <E> the type of exception thrown by the consumer
+     */
+    @FunctionalInterface
+    public interface ClauseConsumer<E extends Exception> {
+        /**
+         * Accepts the clause stored in <code>pool[from]</code> (inclusive) to <code>pool[to]</code> (exclusive).
+         * The pool must not be modified.
+         * @param pool
+         * @param from
+         * @param to
+         * @throws E
+         */
+        void accept(int[] pool, int from, int to) throws E;
+    }
+
+    /**
+     * The literals of all clauses, one clause after the other.
+     */
+    private int[] pool;
+
+    /**
+     * The number of literals in {@link #pool}.
+     */
+    private int poolSize;
+
+    /**
+     * The <em>i</em>-th clause occupies the positions from <code>offsets[i]</code> (inclusive)
+     * to <code>offsets[i+1]</code> (exclusive) of {@link #pool}.
+     */
+    private int[] offsets;
+
+    /**
+     * The number of clauses.
+     */
+    private int clauseCount;
+
+    /**
+     * The 64-bit hash of each clause.
+     */
+    private long[] hashes;
+
     /**
-     * The formula in conjunctive normal form.
-     * Each element represents a clause.
+     * An open-addressing hash index of clauses, where each slot stores a clause position plus one,
+     * or <code>0</code> if the slot is empty.
      */
-    private Set<DimacsLiterals> clausesCNF;
+    private int[] index;
 
-    private BooleanFormula(Set<DimacsLiterals> clauses) {
-        clausesCNF = clauses;
+    /**
+     * The highest variable among the clauses in this formula.
+     */
+    private int maxVariable;
+
+    private BooleanFormula() {
+        pool = new int[INITIAL_LITERAL_CAPACITY];
+        offsets = new int[INITIAL_CLAUSE_CAPACITY + 1];
+        hashes = new long[INITIAL_CLAUSE_CAPACITY];
+        index = new int[INITIAL_CLAUSE_CAPACITY * 2];
     }
 
     /**
@@ -24,7 +84,21 @@ public class BooleanFormula {
      * @return
      */
     public Stream<DimacsLiterals> clauses() {
-        return clausesCNF.stream();
+        return IntStream.range(0, clauseCount)
+                .mapToObj(this::clause);
+    }
+
+    /**
+     * Passes each clause of this formula to the specified consumer, without copying its literals.
+     * @param consumer
+     * @param <E> the type of exception thrown by the consumer
+     * @throws E if the consumer throws an exception
+     */
+    public <E extends Exception> void forEachClause(ClauseConsumer<E> consumer) throws E {
+        Objects.requireNonNull(consumer);
+        for (int i = 0; i < clauseCount; i++) {
+            consumer.accept(pool, offsets[i], offsets[i + 1]);
+        }
     }
 
     /**
@@ -32,7 +106,7 @@ public class BooleanFormula {
      * @param clause
      */
     public void addClause(DimacsLiterals clause) {
-        clausesCNF.add(Objects.requireNonNull(clause));
+        addCanonicalClause(canonicalize(Objects.requireNonNull(clause).literals));
     }
 
     /**
@@ -50,7 +124,7 @@ public class BooleanFormula {
      * @param literal
      */
     public void addLiteral(int literal) {
-        clausesCNF.add(DimacsLiterals.of(literal));
+        addCanonicalClause(literal != 0 ? new int[]{literal} : new int[0]);
     }
 
     /**
@@ -58,21 +132,132 @@ public class BooleanFormula {
      * @return
      */
     public int size() {
-        return clausesCNF.size();
+        return clauseCount;
     }
 
     /**
      * Returns the highest literal among the clauses in this formula.
      * Normally, this value represents the number of variables in a boolean problem.
+     * The value is maintained incrementally as clauses are added.
      *
      * @return the highest literal (in its absolute value) among the clauses in this formula,
      * or <code>0</code> if the formula is empty.
      */
     public int max() {
-        return clauses()
-                .flatMapToInt(DimacsLiterals::stream)  // build a stream of literals
-                .map(literal -> literal < 0 ? -literal : literal)  // convert to absolute values
-                .max().orElse(0);  // find the highest literal
+        return maxVariable;
+    }
+
+    /**
+     * Returns the <em>i</em>-th clause.
+     */
+    private DimacsLiterals clause(int i) {
+        return new DimacsLiterals(Arrays.copyOfRange(pool, offsets[i], offsets[i + 1]));
+    }
+
+    /**
+     * Adds a clause in canonical form, unless an equal clause is already stored.
+     */
+    void addCanonicalClause(int[] clause) {
+        long hash = hash(clause, 0, clause.length);
+        int slot = findSlot(clause, hash);
+        if (index[slot] != 0) {
+            return;
+        }
+        // Append the literals to the pool.
+        if (poolSize + clause.length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + clause.length));
+        }
+        System.arraycopy(clause, 0, pool, poolSize, clause.length);
+        poolSize += clause.length;
+        // Append the clause.
+        if (clauseCount == hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            offsets = Arrays.copyOf(offsets, hashes.length + 1);
+        }
+        hashes[clauseCount] = hash;
+        index[slot] = clauseCount + 1;
+        clauseCount++;
+        offsets[clauseCount] = poolSize;
+        for (int literal : clause) {
+            maxVariable = Math.max(maxVariable, literal < 0 ? -literal : literal);
+        }
+        if (clauseCount * 2 > index.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this formula contains a clause equal to the specified
+     * canonical clause.
+     */
+    private boolean containsCanonicalClause(int[] clause, int from, int to) {
+        int[] copy = Arrays.copyOfRange(clause, from, to);
+        return index[findSlot(copy, hash(copy, 0, copy.length))] != 0;
+    }
+
+    /**
+     * Finds the index slot of the specified canonical clause,
+     * or the empty slot where it should be inserted.
+     */
+    private int findSlot(int[] clause, long hash) {
+        int mask = index.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (index[slot] != 0) {
+            int i = index[slot] - 1;
+            if (hashes[i] == hash && equalsClause(i, clause)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean equalsClause(int i, int[] clause) {
+        int from = offsets[i];
+        int length = offsets[i + 1] - from;
+        if (length != clause.length) return false;
+        for (int j = 0; j < length; j++) {
+            if (pool[from + j] != clause[j]) return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        index = new int[index.length * 2];
+        int mask = index.length - 1;
+        for (int i = 0; i < clauseCount; i++) {
+            int slot = (int) (hashes[i] ^ (hashes[i] >>> 32)) & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Sorts the literals of a clause by variable (negative literals first) and removes duplicates and zeroes.
+     */
+    private static int[] canonicalize(int[] clause) {
+        return Arrays.stream(clause)
+                .filter(literal -> literal != 0)
+                .distinct()
+                .boxed()
+                .sorted(Comparator.<Integer>comparingInt(Math::abs).thenComparingInt(literal -> literal))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Computes a 64-bit hash of the literals from <code>clause[from]</code> to <code>clause[to]</code>.
+     */
+    private static long hash(int[] clause, int from, int to) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            hash ^= clause[i];
+            hash *= 0x100000001b3L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
     }
 
     /**
@@ -80,15 +265,40 @@ public class BooleanFormula {
      * @return
      */
     public static BooleanFormula empty() {
-        return new BooleanFormula(new HashSet<>());
+        return new BooleanFormula();
     }
 
     /**
-     * Returns a new empty formula, backed by a synchronized set.
+     * Returns a new formula with the same clauses as the specified formula.
+     * The literal pool is copied in bulk, without re-canonicalizing nor re-hashing the clauses.
+     * @param formula
+     * @return
+     */
+    public static BooleanFormula copyOf(BooleanFormula formula) {
+        BooleanFormula copy = new BooleanFormula();
+        Objects.requireNonNull(formula).copyTo(copy);
+        return copy;
+    }
+
+    /**
+     * Copies the contents of this formula into the specified (empty) formula.
+     */
+    void copyTo(BooleanFormula copy) {
+        copy.pool = Arrays.copyOf(pool, Math.max(poolSize, INITIAL_LITERAL_CAPACITY));
+        copy.poolSize = poolSize;
+        copy.offsets = Arrays.copyOf(offsets, offsets.length);
+        copy.hashes = Arrays.copyOf(hashes, hashes.length);
+        copy.index = Arrays.copyOf(index, index.length);
+        copy.clauseCount = clauseCount;
+        copy.maxVariable = maxVariable;
+    }
+
+    /**
+     * Returns a new empty formula that can be safely shared among threads.
      * @return
      */
     public static BooleanFormula emptySynchronized() {
-        return new BooleanFormula(Collections.synchronizedSet(new HashSet<>()));
+        return new SynchronizedFormula();
     }
 
     /**
@@ -97,42 +307,104 @@ public class BooleanFormula {
      * @see SAT4JSolver#solveSAT(BooleanFormula)
      */
     public static Collector<DimacsLiterals, ?, BooleanFormula> toFormula() {
-        return Collectors.collectingAndThen(
-                Collectors.toCollection(HashSet::new),
-                BooleanFormula::new);
+        return Collector.of(
+                BooleanFormula::empty,
+                BooleanFormula::addClause,
+                BooleanFormula::merge);
     }
 
     /**
-     * Returns a <code>Collector</code> that accumulates input clauses into a new formula,
-     * backed by a synchronized set.
+     * Returns a <code>Collector</code> that accumulates input clauses into a new formula
+     * that can be safely shared among threads.
      * @return
      * @see SAT4JSolver#solveSAT(BooleanFormula)
      */
     public static Collector<DimacsLiterals, ?, BooleanFormula> toSynchronizedFormula() {
-        return Collectors.collectingAndThen(
-                Collectors.toCollection(() -> Collections.synchronizedSet(new HashSet<>())),
-                BooleanFormula::new);
+        return Collector.of(
+                BooleanFormula::emptySynchronized,
+                BooleanFormula::addClause,
+                BooleanFormula::merge);
+    }
+
+    private static BooleanFormula merge(BooleanFormula left, BooleanFormula right) {
+        right.forEachClause((pool, from, to) -> left.addCanonicalClause(Arrays.copyOfRange(pool, from, to)));
+        return left;
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof BooleanFormula)) return false;
         BooleanFormula other = (BooleanFormula) o;
-        return clausesCNF.equals(other.clausesCNF);
+        if (size() != other.size()) return false;
+        for (int i = 0; i < other.clauseCount; i++) {
+            if (!containsCanonicalClause(other.pool, other.offsets[i], other.offsets[i + 1])) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return clausesCNF.hashCode();
+        // The sum of clause hashes does not depend on the insertion order.
+        long sum = 0;
+        for (int i = 0; i < clauseCount; i++) sum += hashes[i];
+        return (int) (sum ^ (sum >>> 32));
     }
 
     @Override
     public String toString() {
-        return clausesCNF.stream()
-                .map(clause -> Arrays.stream(clause.literals)
+        return clauses()
+                .map(clause -> clause.stream()
                         .mapToObj(String::valueOf)
                         .collect(Collectors.joining(" OR ", "(", ")")))
                 .collect(Collectors.joining(" AND "));
     }
+
+    /**
+     * A formula whose methods are synchronized on the formula itself.
+     * Streams returned by {@link #clauses()} are backed by a snapshot of the clauses.
+     */
+    private static class SynchronizedFormula extends BooleanFormula {
+        @Override
+        public synchronized Stream<DimacsLiterals> clauses() {
+            return super.clauses().collect(Collectors.toList()).stream();
+        }
+
+        @Override
+        public synchronized <E extends Exception> void forEachClause(ClauseConsumer<E> consumer) throws E {
+            super.forEachClause(consumer);
+        }
+
+        @Override
+        synchronized void copyTo(BooleanFormula copy) {
+            super.copyTo(copy);
+        }
+
+        @Override
+        synchronized void addCanonicalClause(int[] clause) {
+            super.addCanonicalClause(clause);
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+
+        @Override
+        public synchronized int max() {
+            return super.max();
+        }
+
+        @Override
+        public synchronized boolean equals(Object o) {
+            return super.equals(o);
+        }
+
+        @Override
+        public synchronized int hashCode() {
+            return super.hashCode();
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package it.poliba.sisinflab.dlpreferences.sat;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Checks whether complete models satisfy a precompiled boolean formula.
+ * The clauses of the formula are compiled once into arrays of DIMACS literals;
+ * each model is then loaded into a <code>BitSet</code> of true variables,
+ * so that evaluating a literal is a single bit lookup.
+ */
+public class ClauseEvaluator implements Predicate<DimacsLiterals> {
+    /**
+     * The clauses of the compiled formula.
+     */
+    private int[][] clauses;
+
+    /**
+     * Constructs a <code>ClauseEvaluator</code> for the specified formula.
+     * Subsequent changes to <code>formula</code> are not reflected by this evaluator.
+     * @param formula
+     */
+    public ClauseEvaluator(BooleanFormula formula) {
+        Objects.requireNonNull(formula);
+        clauses = new int[formula.size()][];
+        int[] next = {0};
+        formula.forEachClause((pool, from, to) -> clauses[next[0]++] = Arrays.copyOfRange(pool, from, to));
+    }
+
+    /**
+     * Returns <code>true</code> if the specified model satisfies every clause of the compiled formula.
+     * Variables that do not appear in <code>model</code> as positive literals are considered false.
+     * @param model
+     * @return
+     */
+    @Override
+    public boolean test(DimacsLiterals model) {
+        Objects.requireNonNull(model);
+        BitSet trueVariables = new BitSet();
+        for (int literal : model.literals) {
+            if (literal > 0) trueVariables.set(literal);
+        }
+        for (int[] clause : clauses) {
+            if (!isSatisfied(clause, trueVariables)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of clauses in the compiled formula.
+     * @return
+     */
+    public int size() {
+        return clauses.length;
+    }
+
+    private static boolean isSatisfied(int[] clause, BitSet trueVariables) {
+        for (int literal : clause) {
+            if (literal > 0 ? trueVariables.get(literal) : !trueVariables.get(-literal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,162 @@
+package it.poliba.sisinflab.dlpreferences.sat;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An append-only log of boolean clauses that can be shared among threads without locking.
+ *
+ * <p>Writers reserve a position with an atomic counter and store their clause in it;
+ * a filled position is ready to be published. The published size only advances over ready positions,
+ * in order of reservation, and any thread may advance it: writers after storing their clause,
+ * readers when taking a snapshot. Hence neither writers nor readers ever wait for each other,
+ * although a clause is not visible until the clauses reserved before it are stored.
+ * A snapshot of the log is its published size, and the clauses before that size
+ * never change afterwards. This lets readers load new clauses incrementally, for example
+ * into an {@link ImplicationChecker} obtained from {@link SAT4JSolver#implicationChecker(ClauseLog)}.
+ *
+ * <p>Clauses are stored in fixed-size chunks that are allocated on demand,
+ * so that appending never copies the clauses already in the log.
+ */
+public class ClauseLog {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<int[]>> chunks;
+
+    /**
+     * The number of positions reserved by writers.
+     */
+    private final AtomicInteger reserved;
+
+    /**
+     * The number of clauses visible to readers.
+     */
+    private final AtomicInteger published;
+
+    /**
+     * The highest variable among the clauses in the log.
+     */
+    private final AtomicInteger maxVariable;
+
+    /**
+     * Constructs an empty <code>ClauseLog</code>.
+     */
+    public ClauseLog() {
+        chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+        reserved = new AtomicInteger();
+        published = new AtomicInteger();
+        maxVariable = new AtomicInteger();
+    }
+
+    /**
+     * Appends the specified clause to the log.
+     * The clause becomes visible to readers as soon as every clause reserved before it has been stored,
+     * which may happen after this method returns; this method never waits for other writers.
+     *
+     * @param clause
+     * @return the position of the clause in the log
+     * @throws IllegalStateException if the log is full
+     */
+    public int append(DimacsLiterals clause) {
+        int[] literals = Objects.requireNonNull(clause).literals.clone();
+        int position = reserved.getAndIncrement();
+        if (position >= MAX_CHUNKS * CHUNK_SIZE) {
+            throw new IllegalStateException("clause log is full");
+        }
+        int highest = 0;
+        for (int literal : literals) {
+            highest = Math.max(highest, literal < 0 ? -literal : literal);
+        }
+        maxVariable.accumulateAndGet(highest, Math::max);
+        chunk(position >>> CHUNK_BITS).set(position & CHUNK_MASK, literals);
+        advance();
+        return position;
+    }
+
+    /**
+     * Returns a snapshot of this log, that is the number of published clauses.
+     * The clauses at positions less than the returned value never change.
+     * @return
+     */
+    public int snapshot() {
+        return advance();
+    }
+
+    /**
+     * Returns the highest variable among the published clauses, or a greater value
+     * if some clause is being appended concurrently.
+     * @return
+     */
+    public int max() {
+        return maxVariable.get();
+    }
+
+    /**
+     * Passes the clauses at positions from <code>from</code> (inclusive) to <code>to</code> (exclusive)
+     * to the specified consumer, without copying their literals.
+     *
+     * @param from
+     * @param to a value not greater than a snapshot of this log
+     * @param consumer
+     * @param <E> the type of exception thrown by the consumer
+     * @throws E if the consumer throws an exception
+     * @throws IndexOutOfBoundsException if the range includes unpublished clauses
+     */
+    public <E extends Exception> void forEachClause(int from, int to, BooleanFormula.ClauseConsumer<E> consumer)
+            throws E {
+        Objects.requireNonNull(consumer);
+        if (from < 0 || from > to || to > published.get()) {
+            throw new IndexOutOfBoundsException(String.format("[%d, %d)", from, to));
+        }
+        for (int position = from; position < to; position++) {
+            int[] literals = chunks.get(position >>> CHUNK_BITS).get(position & CHUNK_MASK);
+            consumer.accept(literals, 0, literals.length);
+        }
+    }
+
+    /**
+     * Returns a new formula containing the clauses before the specified snapshot.
+     * @param snapshot
+     * @return
+     */
+    public BooleanFormula toFormula(int snapshot) {
+        BooleanFormula formula = BooleanFormula.empty();
+        forEachClause(0, snapshot, (literals, from, to) -> formula.addClause(new DimacsLiterals(literals)));
+        return formula;
+    }
+
+    /**
+     * Advances the published size over the positions whose clause has been stored.
+     * @return the published size
+     */
+    private int advance() {
+        int size = published.get();
+        while (size < reserved.get() && isReady(size)) {
+            // If another thread advanced the published size first, continue from there.
+            published.compareAndSet(size, size + 1);
+            size = published.get();
+        }
+        return size;
+    }
+
+    private boolean isReady(int position) {
+        if (position >= MAX_CHUNKS * CHUNK_SIZE) {
+            return false;
+        }
+        AtomicReferenceArray<int[]> chunk = chunks.get(position >>> CHUNK_BITS);
+        return chunk != null && chunk.get(position & CHUNK_MASK) != null;
+    }
+
+    private AtomicReferenceArray<int[]> chunk(int index) {
+        AtomicReferenceArray<int[]> chunk = chunks.get(index);
+        if (chunk == null) {
+            chunks.compareAndSet(index, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(index);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,130 @@
+package it.poliba.sisinflab.dlpreferences.sat;
+
+import it.poliba.sisinflab.dlpreferences.except.SATRuntimeException;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Checks whether the clauses of a {@link ClauseLog} imply other clauses.
+ *
+ * <p>The checker keeps a single incremental solver: before each check, the clauses published
+ * in the log since the previous check are loaded into the solver, and the clause to check
+ * is refuted under assumptions (its negated literals), so that no clause is ever copied twice
+ * and no solver is rebuilt.
+ *
+ * <p>This class is not thread-safe: each thread should use its own instance.
+ * Instances are obtained from {@link SAT4JSolver#implicationChecker(ClauseLog)}.
+ */
+public class ImplicationChecker implements Predicate<DimacsLiterals> {
+    private ISolver solver;
+    private ClauseLog log;
+
+    /**
+     * The number of clauses of {@link #log} already loaded into {@link #solver}.
+     */
+    private int loaded;
+
+    /**
+     * The number of variables declared to {@link #solver}.
+     */
+    private int variables;
+
+    /**
+     * <code>true</code> if the loaded clauses are unsatisfiable.
+     */
+    private boolean inconsistent;
+
+    /**
+     * @param solver a solver instance loaded with the constraints that hold regardless of the log,
+     *               or <code>null</code> if those constraints are unsatisfiable
+     * @param log
+     */
+    ImplicationChecker(ISolver solver, ClauseLog log) {
+        this.solver = solver;
+        this.log = Objects.requireNonNull(log);
+        this.inconsistent = solver == null;
+        this.variables = solver != null ? solver.nVars() : 0;
+    }
+
+    /**
+     * Returns <code>true</code> if the clauses currently published in the log,
+     * together with the constraints of the originating {@link SAT4JSolver}, imply the specified clause.
+     * @param clause
+     * @return
+     * @throws IllegalStateException if this checker has been disposed
+     */
+    @Override
+    public boolean test(DimacsLiterals clause) {
+        Objects.requireNonNull(clause);
+        if (log == null) {
+            throw new IllegalStateException("disposed implication checker");
+        }
+        synchronize();
+        if (inconsistent) {
+            return true;
+        }
+        int[] assumptions = new int[clause.literals.length];
+        for (int i = 0; i < assumptions.length; i++) {
+            assumptions[i] = -clause.literals[i];
+            ensureVariable(clause.literals[i]);
+        }
+        try {
+            return !solver.isSatisfiable(new VecInt(assumptions));
+        } catch (TimeoutException e) {
+            throw new SATRuntimeException(e);
+        }
+    }
+
+    /**
+     * Releases the solver and the log held by this checker, which cannot be used afterwards.
+     * Checkers kept by long-lived threads, for example in a <code>ThreadLocal</code>,
+     * should be disposed once they are no longer needed.
+     */
+    public void dispose() {
+        if (solver != null) {
+            solver.reset();
+            solver = null;
+        }
+        log = null;
+        inconsistent = true;
+    }
+
+    /**
+     * Loads the clauses published in the log since the last call into the solver.
+     */
+    private void synchronize() {
+        int snapshot = log.snapshot();
+        if (inconsistent || snapshot == loaded) {
+            loaded = snapshot;
+            return;
+        }
+        VecInt buffer = new VecInt();
+        try {
+            log.forEachClause(loaded, snapshot, (literals, from, to) -> {
+                buffer.clear();
+                for (int i = from; i < to; i++) {
+                    ensureVariable(literals[i]);
+                    buffer.push(literals[i]);
+                }
+                solver.addClause(buffer);
+            });
+        } catch (ContradictionException e) {
+            inconsistent = true;
+            solver.reset();
+        }
+        loaded = snapshot;
+    }
+
+    private void ensureVariable(int literal) {
+        int variable = literal < 0 ? -literal : literal;
+        if (variable > variables) {
+            variables = variable;
+            solver.newVar(variables);
+        }
+    }
+}
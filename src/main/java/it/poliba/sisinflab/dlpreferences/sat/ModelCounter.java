@@ -0,0 +1,288 @@
+package it.poliba.sisinflab.dlpreferences.sat;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * An exact model counter for boolean formulas in conjunctive normal form.
+ *
+ * <p>The counter performs a DPLL-style search with unit propagation.
+ * At each step, the residual clauses are split into connected components
+ * (clauses are connected if they share a variable), which are counted independently
+ * and multiplied together. The count of each component is cached under a canonical key,
+ * so that components that reappear in different branches are counted once.
+ */
+class ModelCounter {
+    /**
+     * The maximum number of cached components; the cache is cleared when this size is exceeded.
+     */
+    private static final int MAX_CACHE_SIZE = 1 << 20;
+
+    private Map<ComponentKey, BigInteger> cache;
+
+    ModelCounter() {
+        cache = new HashMap<>();
+    }
+
+    /**
+     * Counts the models of the specified clauses over the variables <code>1, 2, &hellip; variables</code>.
+     * Variables that do not appear in any clause can take any value.
+     *
+     * @param clauses
+     * @param variables the number of variables; it must not be less than the highest variable in <code>clauses</code>
+     * @return
+     */
+    BigInteger count(Collection<int[]> clauses, int variables) {
+        List<int[]> normalized = new ArrayList<>(clauses.size());
+        for (int[] clause : clauses) {
+            int[] normalizedClause = normalize(clause);
+            if (normalizedClause != null) {
+                normalized.add(normalizedClause);
+            }
+        }
+        Residual residual = propagate(normalized, 0);
+        if (residual == null) {
+            return BigInteger.ZERO;
+        }
+        int free = variables - residual.assigned - variables(residual.clauses).size();
+        return BigInteger.ONE.shiftLeft(free).multiply(countComponents(residual.clauses));
+    }
+
+    /**
+     * Counts the models of a set of clauses over the variables that appear in them,
+     * by multiplying the counts of its connected components.
+     */
+    private BigInteger countComponents(List<int[]> clauses) {
+        BigInteger result = BigInteger.ONE;
+        for (List<int[]> component : components(clauses)) {
+            result = result.multiply(countComponent(component));
+            if (result.signum() == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the models of a connected set of clauses over the variables that appear in them.
+     */
+    private BigInteger countComponent(List<int[]> component) {
+        ComponentKey key = new ComponentKey(component);
+        BigInteger cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Set<Integer> componentVariables = variables(component);
+        int branchingVariable = mostFrequentVariable(component);
+        BigInteger result = BigInteger.ZERO;
+        for (int literal : new int[]{branchingVariable, -branchingVariable}) {
+            Residual residual = propagate(component, literal);
+            if (residual == null) {
+                continue;
+            }
+            int free = componentVariables.size() - residual.assigned - variables(residual.clauses).size();
+            result = result.add(BigInteger.ONE.shiftLeft(free).multiply(countComponents(residual.clauses)));
+        }
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            cache.clear();
+        }
+        cache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Assigns the specified literal (unless it is 0), then applies unit propagation until a fixpoint is reached.
+     *
+     * @return the residual clauses and the number of assigned variables,
+     * or <code>null</code> if a conflict is found
+     */
+    private static Residual propagate(List<int[]> clauses, int literal) {
+        Map<Integer, Boolean> assignment = new HashMap<>();
+        if (literal != 0) {
+            assignment.put(Math.abs(literal), literal > 0);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int[] clause : clauses) {
+                int unassignedCount = 0;
+                int lastUnassigned = 0;
+                boolean satisfied = false;
+                for (int l : clause) {
+                    Boolean value = assignment.get(Math.abs(l));
+                    if (value == null) {
+                        unassignedCount++;
+                        lastUnassigned = l;
+                    } else if (value == (l > 0)) {
+                        satisfied = true;
+                        break;
+                    }
+                }
+                if (satisfied) {
+                    continue;
+                }
+                if (unassignedCount == 0) {
+                    return null;
+                }
+                if (unassignedCount == 1) {
+                    assignment.put(Math.abs(lastUnassigned), lastUnassigned > 0);
+                    changed = true;
+                }
+            }
+        }
+        // Build the residual clauses.
+        List<int[]> residualClauses = new ArrayList<>();
+        for (int[] clause : clauses) {
+            boolean satisfied = false;
+            int[] reduced = new int[clause.length];
+            int size = 0;
+            for (int l : clause) {
+                Boolean value = assignment.get(Math.abs(l));
+                if (value == null) {
+                    reduced[size++] = l;
+                } else if (value == (l > 0)) {
+                    satisfied = true;
+                    break;
+                }
+            }
+            if (!satisfied) {
+                residualClauses.add(Arrays.copyOf(reduced, size));
+            }
+        }
+        return new Residual(residualClauses, assignment.size());
+    }
+
+    /**
+     * Splits the specified clauses into connected components.
+     */
+    private static Collection<List<int[]>> components(List<int[]> clauses) {
+        // Union-find over variables.
+        Map<Integer, Integer> parent = new HashMap<>();
+        for (int[] clause : clauses) {
+            int first = find(parent, Math.abs(clause[0]));
+            for (int i = 1; i < clause.length; i++) {
+                int other = find(parent, Math.abs(clause[i]));
+                if (other != first) {
+                    parent.put(other, first);
+                }
+            }
+        }
+        Map<Integer, List<int[]>> components = new HashMap<>();
+        for (int[] clause : clauses) {
+            components.computeIfAbsent(find(parent, Math.abs(clause[0])), root -> new ArrayList<>())
+                    .add(clause);
+        }
+        return components.values();
+    }
+
+    private static int find(Map<Integer, Integer> parent, int variable) {
+        int root = variable;
+        Integer next;
+        while ((next = parent.get(root)) != null && next != root) {
+            root = next;
+        }
+        // Compress the path.
+        while ((next = parent.get(variable)) != null && next != root) {
+            parent.put(variable, root);
+            variable = next;
+        }
+        parent.putIfAbsent(root, root);
+        return root;
+    }
+
+    private static Set<Integer> variables(List<int[]> clauses) {
+        Set<Integer> variables = new HashSet<>();
+        for (int[] clause : clauses) {
+            for (int l : clause) variables.add(Math.abs(l));
+        }
+        return variables;
+    }
+
+    private static int mostFrequentVariable(List<int[]> clauses) {
+        Map<Integer, Integer> occurrences = new HashMap<>();
+        int best = 0;
+        int bestCount = 0;
+        for (int[] clause : clauses) {
+            for (int l : clause) {
+                int count = occurrences.merge(Math.abs(l), 1, Integer::sum);
+                if (count > bestCount) {
+                    best = Math.abs(l);
+                    bestCount = count;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sorts the literals of a clause and removes duplicates.
+     *
+     * @return the normalized clause, or <code>null</code> if the clause is a tautology
+     */
+    private static int[] normalize(int[] clause) {
+        int[] sorted = Arrays.stream(clause)
+                .filter(l -> l != 0)
+                .distinct()
+                .sorted()
+                .toArray();
+        Set<Integer> literals = new HashSet<>();
+        for (int l : sorted) {
+            if (literals.contains(-l)) return null;
+            literals.add(l);
+        }
+        return sorted;
+    }
+
+    /**
+     * The clauses left after unit propagation, with the number of variables it assigned.
+     */
+    private static class Residual {
+        private List<int[]> clauses;
+        private int assigned;
+
+        private Residual(List<int[]> clauses, int assigned) {
+            this.clauses = clauses;
+            this.assigned = assigned;
+        }
+    }
+
+    /**
+     * A canonical representation of a component: its sorted clauses, sorted lexicographically
+     * and concatenated with 0 as separator.
+     */
+    private static class ComponentKey {
+        private int[] literals;
+        private int hash;
+
+        private ComponentKey(List<int[]> component) {
+            int[][] sorted = component.stream()
+                    .map(clause -> Arrays.stream(clause).sorted().toArray())
+                    .sorted(ComponentKey::compare)
+                    .toArray(int[][]::new);
+            literals = Arrays.stream(sorted)
+                    .flatMapToInt(clause -> Arrays.stream(Arrays.copyOf(clause, clause.length + 1)))
+                    .toArray();
+            hash = Arrays.hashCode(literals);
+        }
+
+        private static int compare(int[] left, int[] right) {
+            for (int i = 0; i < Math.min(left.length, right.length); i++) {
+                if (left[i] != right[i]) return Integer.compare(left[i], right[i]);
+            }
+            return Integer.compare(left.length, right.length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ComponentKey other = (ComponentKey) o;
+            return hash == other.hash && Arrays.equals(literals, other.literals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package it.poliba.sisinflab.dlpreferences.sat;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Simplifies boolean formulas in conjunctive normal form before they are handed to a solver.
+ *
+ * <p>The following techniques are applied repeatedly, until the formula does not change:
+ * <ul>
+ *     <li>unit propagation: clauses satisfied by a unit literal are removed,
+ *     and falsified literals are removed from the remaining clauses;</li>
+ *     <li>subsumption: a clause that contains all the literals of another clause is removed;</li>
+ *     <li>self-subsuming resolution: if <code>C OR l</code> and <code>D OR (NOT l)</code> are clauses
+ *     and <code>C</code> is contained in <code>D</code>, the literal <code>NOT l</code> is removed
+ *     from the latter;</li>
+ *     <li>pure literal elimination: a variable that occurs with a single polarity
+ *     is fixed to that polarity.</li>
+ * </ul>
+ *
+ * <p>Every assignment found by unit propagation or pure literal elimination is kept
+ * in the simplified formula as a unit clause, so that the models of the simplified formula
+ * are models of the original formula, and need not be mapped back.
+ * Unit propagation, subsumption and self-subsuming resolution preserve every model.
+ * Pure literal elimination preserves satisfiability, and it preserves the models
+ * projected onto the remaining variables; therefore, it is applied only to the variables
+ * accepted by the predicate passed to the constructor.
+ */
+public class Preprocessor {
+    /**
+     * The maximum number of simplification rounds.
+     */
+    private static final int MAX_ROUNDS = 16;
+
+    private IntPredicate isEliminable;
+
+    /**
+     * Constructs a <code>Preprocessor</code> that does not apply pure literal elimination,
+     * and therefore preserves every model of the formulas it simplifies.
+     */
+    public Preprocessor() {
+        this(variable -> false);
+    }
+
+    /**
+     * Constructs a <code>Preprocessor</code> that applies pure literal elimination
+     * to the variables accepted by the specified predicate.
+     * @param isEliminable
+     */
+    public Preprocessor(IntPredicate isEliminable) {
+        this.isEliminable = Objects.requireNonNull(isEliminable);
+    }
+
+    /**
+     * Simplifies the specified formula. The formula itself is not modified.
+     * @param formula
+     * @return the simplified formula, along with reduction statistics
+     */
+    public Result preprocess(BooleanFormula formula) {
+        Objects.requireNonNull(formula);
+        Result result = new Result();
+        result.originalSize = formula.size();
+        int variables = formula.max();
+        List<int[]> clauses = new ArrayList<>(formula.size());
+        formula.forEachClause((pool, from, to) -> {
+            int[] clause = Arrays.copyOfRange(pool, from, to);
+            if (!isTautology(clause)) {
+                clauses.add(clause);
+            }
+        });
+        // The value of each variable: 1 if true, -1 if false, 0 if unassigned.
+        int[] values = new int[variables + 1];
+        boolean changed = true;
+        for (int round = 0; changed && round < MAX_ROUNDS; round++) {
+            if (!propagate(clauses, values, result)) {
+                return result.unsatisfiable();
+            }
+            changed = subsume(clauses, variables, result);
+            if (clauses.stream().anyMatch(clause -> clause.length == 0)) {
+                return result.unsatisfiable();
+            }
+            changed |= eliminatePureLiterals(clauses, values, result);
+        }
+        // Build the simplified formula.
+        BooleanFormula simplified = BooleanFormula.empty();
+        for (int variable = 1; variable <= variables; variable++) {
+            if (values[variable] != 0) {
+                simplified.addLiteral(values[variable] * variable);
+            }
+        }
+        for (int[] clause : clauses) {
+            simplified.addCanonicalClause(clause);
+        }
+        result.formula = simplified;
+        return result;
+    }
+
+    /**
+     * Applies unit propagation until a fixpoint is reached.
+     * Unit clauses are removed from <code>clauses</code> and recorded in <code>values</code>.
+     *
+     * @return <code>false</code> if a conflict is found
+     */
+    private static boolean propagate(List<int[]> clauses, int[] values, Result result) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            ListIterator<int[]> iterator = clauses.listIterator();
+            while (iterator.hasNext()) {
+                int[] clause = iterator.next();
+                int[] reduced = new int[clause.length];
+                int size = 0;
+                boolean satisfied = false;
+                for (int literal : clause) {
+                    int value = values[literal < 0 ? -literal : literal];
+                    if (value == 0) {
+                        reduced[size++] = literal;
+                    } else if ((value > 0) == (literal > 0)) {
+                        satisfied = true;
+                        break;
+                    }
+                }
+                if (satisfied) {
+                    iterator.remove();
+                } else if (size == 0) {
+                    return false;
+                } else if (size == 1) {
+                    int unit = reduced[0];
+                    values[unit < 0 ? -unit : unit] = unit < 0 ? -1 : 1;
+                    result.unitCount++;
+                    iterator.remove();
+                    changed = true;
+                } else if (size < clause.length) {
+                    iterator.set(Arrays.copyOf(reduced, size));
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies subsumption and self-subsuming resolution, processing shorter clauses first.
+     *
+     * @return <code>true</code> if <code>clauses</code> changed
+     */
+    private static boolean subsume(List<int[]> clauses, int variables, Result result) {
+        clauses.sort(Comparator.comparingInt(clause -> clause.length));
+        int size = clauses.size();
+        int[][] clauseArray = clauses.toArray(new int[size][]);
+        boolean[] removed = new boolean[size];
+        // Occurrence lists, indexed by literal code.
+        List<List<Integer>> occurrences = new ArrayList<>(2 * variables + 2);
+        for (int i = 0; i < 2 * variables + 2; i++) {
+            occurrences.add(new ArrayList<>());
+        }
+        for (int i = 0; i < size; i++) {
+            for (int literal : clauseArray[i]) {
+                occurrences.get(code(literal)).add(i);
+            }
+        }
+        // The literals of the candidate clause are marked with the current stamp.
+        int[] marks = new int[2 * variables + 2];
+        int stamp = 0;
+        boolean changed = false;
+        for (int i = 0; i < size; i++) {
+            if (removed[i]) continue;
+            int[] clause = clauseArray[i];
+            // Forward subsumption: scan the shortest occurrence list among the literals of the clause.
+            int rarest = clause[0];
+            for (int literal : clause) {
+                if (occurrences.get(code(literal)).size() < occurrences.get(code(rarest)).size()) {
+                    rarest = literal;
+                }
+            }
+            for (int j : occurrences.get(code(rarest))) {
+                if (j == i || removed[j] || clauseArray[j].length < clause.length) continue;
+                stamp++;
+                for (int literal : clauseArray[j]) marks[code(literal)] = stamp;
+                if (containsAll(marks, stamp, clause, 0)) {
+                    removed[j] = true;
+                    result.subsumedCount++;
+                    changed = true;
+                }
+            }
+            // Self-subsuming resolution.
+            for (int literal : clause) {
+                for (int j : occurrences.get(code(-literal))) {
+                    if (j == i || removed[j] || clauseArray[j].length < clause.length) continue;
+                    stamp++;
+                    for (int other : clauseArray[j]) marks[code(other)] = stamp;
+                    if (marks[code(-literal)] == stamp && containsAll(marks, stamp, clause, literal)) {
+                        clauseArray[j] = Arrays.stream(clauseArray[j])
+                                .filter(other -> other != -literal)
+                                .toArray();
+                        result.strengthenedCount++;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        clauses.clear();
+        for (int i = 0; i < size; i++) {
+            if (!removed[i]) clauses.add(clauseArray[i]);
+        }
+        return changed;
+    }
+
+    /**
+     * Fixes the eliminable variables that occur with a single polarity.
+     *
+     * @return <code>true</code> if some variable was fixed
+     */
+    private boolean eliminatePureLiterals(List<int[]> clauses, int[] values, Result result) {
+        // Bit 1: positive occurrence; bit 2: negative occurrence.
+        int[] polarities = new int[values.length];
+        for (int[] clause : clauses) {
+            for (int literal : clause) {
+                polarities[literal < 0 ? -literal : literal] |= literal < 0 ? 2 : 1;
+            }
+        }
+        boolean changed = false;
+        for (int variable = 1; variable < values.length; variable++) {
+            int polarity = polarities[variable];
+            if ((polarity == 1 || polarity == 2) && values[variable] == 0 && isEliminable.test(variable)) {
+                values[variable] = polarity == 1 ? 1 : -1;
+                result.pureLiteralCount++;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns <code>true</code> if every literal of <code>clause</code>, except <code>skipped</code>,
+     * is marked with <code>stamp</code>.
+     */
+    private static boolean containsAll(int[] marks, int stamp, int[] clause, int skipped) {
+        for (int literal : clause) {
+            if (literal != skipped && marks[code(literal)] != stamp) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int code(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified canonical clause contains a literal and its negation.
+     */
+    private static boolean isTautology(int[] clause) {
+        for (int i = 1; i < clause.length; i++) {
+            if (clause[i] == -clause[i - 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The result of {@link #preprocess(BooleanFormula)}.
+     */
+    public static class Result {
+        private BooleanFormula formula;
+        private boolean isUnsatisfiable;
+        private int originalSize;
+        private int unitCount;
+        private int subsumedCount;
+        private int strengthenedCount;
+        private int pureLiteralCount;
+
+        private Result() {
+        }
+
+        private Result unsatisfiable() {
+            formula = BooleanFormula.empty();
+            formula.addLiteral(0);
+            isUnsatisfiable = true;
+            return this;
+        }
+
+        /**
+         * Returns the simplified formula. If the original formula was found to be unsatisfiable,
+         * the simplified formula consists of the empty clause.
+         * @return
+         */
+        public BooleanFormula getFormula() {
+            return formula;
+        }
+
+        /**
+         * Returns <code>true</code> if the original formula was found to be unsatisfiable.
+         * @return
+         */
+        public boolean isUnsatisfiable() {
+            return isUnsatisfiable;
+        }
+
+        /**
+         * Returns the number of clauses in the original formula.
+         * @return
+         */
+        public int getOriginalSize() {
+            return originalSize;
+        }
+
+        /**
+         * Returns the number of clauses in the simplified formula.
+         * @return
+         */
+        public int getSize() {
+            return formula.size();
+        }
+
+        /**
+         * Returns the number of literals assigned by unit propagation.
+         * @return
+         */
+        public int getUnitCount() {
+            return unitCount;
+        }
+
+        /**
+         * Returns the number of clauses removed by subsumption.
+         * @return
+         */
+        public int getSubsumedCount() {
+            return subsumedCount;
+        }
+
+        /**
+         * Returns the number of literals removed by self-subsuming resolution.
+         * @return
+         */
+        public int getStrengthenedCount() {
+            return strengthenedCount;
+        }
+
+        /**
+         * Returns the number of variables fixed by pure literal elimination.
+         * @return
+         */
+        public int getPureLiteralCount() {
+            return pureLiteralCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d -> %d clauses (units: %d, subsumed: %d, strengthened: %d, pure literals: %d%s)",
+                    originalSize, getSize(), unitCount, subsumedCount, strengthenedCount, pureLiteralCount,
+                    isUnsatisfiable ? ", unsatisfiable" : "");
+        }
+    }
+}
@@ -3,31 +3,79 @@ package it.poliba.sisinflab.dlpreferences.sat;
 import it.poliba.sisinflab.dlpreferences.except.SATRuntimeException;
 import org.sat4j.core.Vec;
 import org.sat4j.core.VecInt;
-import org.sat4j.minisat.SolverFactory;
 import org.sat4j.pb.IPBSolver;
 import org.sat4j.pb.ObjectiveFunction;
+import org.sat4j.pb.OptToPBSATAdapter;
+import org.sat4j.pb.PseudoOptDecorator;
 import org.sat4j.specs.*;
-import org.sat4j.tools.ModelIterator;
 
 import java.math.BigInteger;
-import java.util.Iterator;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collector;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A boolean SAT solver based on the SAT4J library.
  */
 public class SAT4JSolver {
+    /**
+     * The uses of the underlying SAT4J solvers, each of which can be assigned a different {@link SolverProfile}.
+     */
+    public enum Usage {
+        /**
+         * Satisfiability and implication checks, including the checks performed by
+         * {@link ImplicationChecker}s and backbone computations.
+         */
+        IMPLICATION,
+        /**
+         * Model enumeration and estimation.
+         */
+        ENUMERATION,
+        /**
+         * Pseudo-boolean optimization.
+         */
+        OPTIMIZATION
+    }
+
+    /**
+     * Runs the solvers of portfolio profiles.
+     */
+    private static final ExecutorService PORTFOLIO_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sat4j-portfolio");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * A value that, if passed to {@link #setMaxLiteral(int)}, signals that the number of variables
      * should be computed automatically for each problem handled by this solver.
      */
     public static int MAXLITERAL_AUTO = 0;
 
-    private static int MAXRESULTS_UNLIMITED = -1;
+    /**
+     * The maximum number of models enumerated by {@link #estimateModels(BooleanFormula)}
+     * in each cell of the solution space.
+     */
+    private static final int ESTIMATE_THRESHOLD = 64;
+
+    /**
+     * The number of independent estimates whose median is returned by {@link #estimateModels(BooleanFormula)}.
+     */
+    private static final int ESTIMATE_TRIALS = 7;
 
     /**
      * If <code>!= {@link #MAXLITERAL_AUTO}</code>, this value overrides the number of variables
@@ -35,6 +83,28 @@ public class SAT4JSolver {
      */
     private int maxLiteral;
 
+    /**
+     * Groups of DIMACS literals such that exactly one literal in each group is true
+     * in every model of the problems handled by this solver.
+     */
+    private List<int[]> exactlyOneGroups;
+
+    /**
+     * The sorted set of variables onto which models are projected,
+     * or <code>null</code> if models should contain every variable of the problem.
+     */
+    private volatile int[] projection;
+
+    /**
+     * <code>true</code> if problems are simplified by a {@link Preprocessor} before solving.
+     */
+    private volatile boolean preprocessing;
+
+    /**
+     * The profile of the solvers created for each use.
+     */
+    private Map<Usage, SolverProfile> profiles;
+
     /**
      * Constructs a <code>SAT4JSolver</code> that automatically computes the number of variables
      * for each problem. This constructor is equivalent to invoking {@link #SAT4JSolver(int)}
@@ -57,13 +127,20 @@ public class SAT4JSolver {
      */
     public SAT4JSolver(int maxLiteral) {
         setMaxLiteral(maxLiteral);
+        exactlyOneGroups = new CopyOnWriteArrayList<>();
+        preprocessing = true;
+        profiles = new ConcurrentHashMap<>();
+        for (Usage usage : Usage.values()) {
+            profiles.put(usage, SolverProfile.LIGHT);
+        }
     }
 
     /**
      * Sets the number of variables for problems handled by this solver.
      *
      * @param maxLiteral if positive, each problem handled by this solver will be treated as having
-     *                   a number of variables equal to this value.
+     *                   a number of variables equal to this value, or to the highest variable
+     *                   in the problem if greater (for example, because of auxiliary variables).
      *                   If {@link #MAXLITERAL_AUTO}, the number of variables
      *                   is computed automatically for each problem.
      * @throws IllegalArgumentException if <code>maxLiteral</code> is nor a positive value
@@ -76,6 +153,94 @@ public class SAT4JSolver {
         this.maxLiteral = maxLiteral;
     }
 
+    /**
+     * Requires exactly one of the specified literals to be true in every model
+     * of the problems handled by this solver.
+     * The constraint is encoded natively as a SAT4J cardinality constraint,
+     * so that assignments violating it are never explored nor enumerated.
+     *
+     * @param group a non-empty collection of DIMACS literals
+     * @throws IllegalArgumentException if <code>group</code> is empty
+     */
+    public void addExactlyOne(DimacsLiterals group) {
+        Objects.requireNonNull(group);
+        if (group.literals.length == 0) {
+            throw new IllegalArgumentException("empty group");
+        }
+        exactlyOneGroups.add(group.literals.clone());
+    }
+
+    /**
+     * Restricts the models returned by this solver to the specified variables.
+     * Each model is blocked only on its projection, so that models that differ only
+     * on the remaining (auxiliary) variables are found exactly once.
+     *
+     * @param variables positive DIMACS literals
+     * @throws IllegalArgumentException if <code>variables</code> contains a non-positive value
+     */
+    public void setProjection(IntStream variables) {
+        int[] sortedVariables = Objects.requireNonNull(variables)
+                .sorted()
+                .distinct()
+                .toArray();
+        if (sortedVariables.length > 0 && sortedVariables[0] < 1) {
+            throw new IllegalArgumentException("invalid variable: " + sortedVariables[0]);
+        }
+        projection = sortedVariables;
+    }
+
+    /**
+     * Removes the projection set with {@link #setProjection(IntStream)},
+     * so that models contain every variable of the problem.
+     */
+    public void removeProjection() {
+        projection = null;
+    }
+
+    /**
+     * Sets the profile of the solvers created for the specified use.
+     * By default, every use is assigned {@link SolverProfile#LIGHT}.
+     * @param usage
+     * @param profile
+     */
+    public void setProfile(Usage usage, SolverProfile profile) {
+        profiles.put(Objects.requireNonNull(usage), Objects.requireNonNull(profile));
+    }
+
+    /**
+     * Returns the profile of the solvers created for the specified use.
+     * @param usage
+     * @return
+     */
+    public SolverProfile getProfile(Usage usage) {
+        return profiles.get(Objects.requireNonNull(usage));
+    }
+
+    /**
+     * Enables or disables the simplification of problems before solving (enabled by default).
+     * @param preprocessing
+     * @see #preprocess(BooleanFormula)
+     */
+    public void setPreprocessing(boolean preprocessing) {
+        this.preprocessing = preprocessing;
+    }
+
+    /**
+     * Simplifies the input problem as this solver does before enumerating its models,
+     * and reports the reduction statistics.
+     * Pure literal elimination is applied only to variables that belong neither to the projection
+     * set with {@link #setProjection(IntStream)} nor to the groups added with
+     * {@link #addExactlyOne(DimacsLiterals)}, so that the enumerated models do not change.
+     *
+     * @param problem
+     * @return
+     * @see Preprocessor
+     */
+    public Preprocessor.Result preprocess(BooleanFormula problem) {
+        Objects.requireNonNull(problem);
+        return preprocessor(projection).preprocess(problem);
+    }
+
     /**
      * Returns <code>true</code> if the input problem has at least one model.
      *
@@ -84,8 +249,15 @@ public class SAT4JSolver {
      */
     public boolean isSatisfiable(BooleanFormula problem) {
         Objects.requireNonNull(problem);
-        Stream<DimacsLiterals> modelStream = models(buildSATSolver(problem), 0);
-        return modelStream != null;
+        // No model needs to be preserved, as long as one exists.
+        int[] projectedVariables = projection;
+        return race(Usage.IMPLICATION, (profile, stopper) -> {
+            ISolver solver = buildSATSolver(problem, new int[0], profile);
+            if (solver != null) stopper.accept(solver);
+            try (Stream<DimacsLiterals> modelStream = models(solver, projectedVariables)) {
+                return modelStream.findAny().isPresent();
+            }
+        });
     }
 
     /**
@@ -97,16 +269,38 @@ public class SAT4JSolver {
     public boolean implies(BooleanFormula formula, DimacsLiterals clause) {
         Objects.requireNonNull(formula);
         Objects.requireNonNull(clause);
-        BooleanFormula testFormula = formula.clauses().collect(BooleanFormula.toFormula());
+        BooleanFormula testFormula = BooleanFormula.copyOf(formula);
         testFormula.addNegatedClause(clause);
         return !isSatisfiable(testFormula);
     }
 
+    /**
+     * Returns a new checker for the implications of the clauses in the specified log.
+     * The checker takes into account the constraints added with {@link #addExactlyOne(DimacsLiterals)},
+     * and loads the clauses of the log incrementally, as they are published.
+     * Unlike {@link #implies(BooleanFormula, DimacsLiterals)}, the checker is meant
+     * for repeated checks against a growing set of clauses.
+     *
+     * @param log
+     * @return
+     */
+    public ImplicationChecker implicationChecker(ClauseLog log) {
+        Objects.requireNonNull(log);
+        return new ImplicationChecker(buildSATSolver(BooleanFormula.empty(), null, getProfile(Usage.IMPLICATION)), log);
+    }
+
     /**
      * Solves a boolean satisfiability problem expressed in DIMACS CNF format.
      * If the <code>maxLiteral</code> parameter has been set using {@link #setMaxLiteral(int)}
      * the solver will use <code>maxLiteral</code> as the total number of variables in the boolean problem,
      * otherwise the actual number of variables in <code>problem</code> will be used.
+     * If a projection has been set using {@link #setProjection(IntStream)}, each model
+     * contains only the projection variables and no two models share the same projection.
+     *
+     * <p>The returned <code>Stream</code> is lazy: each model is searched for only when
+     * the stream pipeline requests it. The underlying solver is released as soon as the models
+     * are exhausted; callers that stop early (for example, with <code>findFirst()</code>
+     * or <code>limit(long)</code>) should close the stream to release it.
      *
      * @param problem
      * @return the satisfiable models for the input problem, or an empty <code>Stream</code>
@@ -114,12 +308,157 @@ public class SAT4JSolver {
      */
     public Stream<DimacsLiterals> solveSAT(BooleanFormula problem) {
         Objects.requireNonNull(problem);
-        ModelIterator solver = buildSATSolver(problem);
-        Stream<DimacsLiterals> modelStream = models(solver, MAXRESULTS_UNLIMITED);
-        if (modelStream == null) {
-            return Stream.empty();
+        int[] projectedVariables = projection;
+        return models(buildSATSolver(problem, projectedVariables, getProfile(Usage.ENUMERATION)), projectedVariables);
+    }
+
+    /**
+     * Computes the backbone of the input problem, that is the set of literals that are true in every model.
+     * Only the variables of the projection set with {@link #setProjection(IntStream)} are considered, if any.
+     *
+     * <p>The backbone is computed incrementally on a single solver instance: each literal
+     * of a first model is refuted under an assumption; a model found in the process rules out
+     * every literal it falsifies, while a literal that cannot be refuted is added to the solver
+     * as a unit clause, which speeds up the remaining checks.
+     *
+     * @param problem
+     * @return the literals that are true in every model of <code>problem</code>,
+     * or an empty <code>Optional</code> if the problem is unsatisfiable
+     */
+    public Optional<DimacsLiterals> backbone(BooleanFormula problem) {
+        Objects.requireNonNull(problem);
+        int[] projectedVariables = projection;
+        return race(Usage.IMPLICATION, (profile, stopper) -> {
+            ISolver solver = buildSATSolver(problem, projectedVariables, profile);
+            if (solver == null) {
+                return Optional.empty();
+            }
+            stopper.accept(solver);
+            int[] variables = projectedVariables != null ?
+                    projectedVariables :
+                    IntStream.rangeClosed(1, solver.nVars()).toArray();
+            try {
+                if (!solver.isSatisfiable()) {
+                    return Optional.empty();
+                }
+                // The candidate literals, indexed by position in variables; 0 if ruled out.
+                int[] candidates = project(solver.model(), variables);
+                IntStream.Builder backbone = IntStream.builder();
+                for (int i = 0; i < candidates.length; i++) {
+                    int literal = candidates[i];
+                    if (literal == 0) {
+                        continue;
+                    }
+                    if (solver.isSatisfiable(new VecInt(new int[]{-literal}))) {
+                        // Rule out every candidate that is false in the new model.
+                        int[] model = project(solver.model(), variables);
+                        for (int j = i; j < candidates.length; j++) {
+                            if (candidates[j] != model[j]) candidates[j] = 0;
+                        }
+                    } else {
+                        backbone.accept(literal);
+                        try {
+                            solver.addClause(new VecInt(new int[]{literal}));
+                        } catch (ContradictionException e) {
+                            // The literal is already implied at the root level.
+                        }
+                    }
+                }
+                return Optional.of(new DimacsLiterals(backbone.build().toArray()));
+            } catch (TimeoutException e) {
+                throw new SATRuntimeException(e);
+            } finally {
+                solver.reset();
+            }
+        });
+    }
+
+    /**
+     * Counts the models of the input problem exactly, without enumerating them.
+     * Models are counted over the projection set with {@link #setProjection(IntStream)}, if any,
+     * otherwise over the same variables as {@link #solveSAT(BooleanFormula)}.
+     * The constraints added with {@link #addExactlyOne(DimacsLiterals)} are taken into account.
+     *
+     * <p>The count is computed by a DPLL-style search that splits the residual problem
+     * into independent components and caches the count of each component.
+     *
+     * @param problem
+     * @return the number of models of <code>problem</code>
+     * @throws IllegalArgumentException if a projection is set and <code>problem</code>
+     * contains variables outside of it
+     */
+    public BigInteger countModels(BooleanFormula problem) {
+        Objects.requireNonNull(problem);
+        int[] projectedVariables = projection;
+        List<int[]> clauses = Stream.concat(
+                problem.clauses().map(clause -> clause.literals),
+                cardinalityClauses())
+                .collect(Collectors.toList());
+        if (projectedVariables == null) {
+            return new ModelCounter().count(clauses, size(problem));
+        }
+        boolean isProjectionClosed = clauses.stream()
+                .flatMapToInt(Arrays::stream)
+                .allMatch(literal -> Arrays.binarySearch(projectedVariables, literal < 0 ? -literal : literal) >= 0);
+        if (!isProjectionClosed) {
+            throw new IllegalArgumentException("the problem contains variables outside of the projection");
+        }
+        return new ModelCounter().count(clauses, projectedVariables.length);
+    }
+
+    /**
+     * Estimates the number of models of the input problem, for problems too large
+     * to be counted by {@link #countModels(BooleanFormula)}.
+     * Models are counted over the same variables as {@link #countModels(BooleanFormula)}.
+     *
+     * <p>The estimate is computed by hashing: random XOR constraints over the counted variables
+     * are added to the problem until the number of remaining models is small enough to be enumerated;
+     * each XOR constraint halves the solution space on average, so the number of enumerated models
+     * is scaled by a power of two. The median of several independent estimates is returned.
+     * If the problem has few models, the returned value is exact.
+     * Since random XOR constraints may be empty or repeated, a trial may add more constraints than
+     * counted variables; if no trial reaches a small enough cell, the models are counted exactly.
+     *
+     * @param problem
+     * @return an estimate of the number of models of <code>problem</code>
+     */
+    public BigInteger estimateModels(BooleanFormula problem) {
+        Objects.requireNonNull(problem);
+        int problemSize = size(problem);
+        int[] countedVariables = projection != null ?
+                projection :
+                IntStream.rangeClosed(1, problemSize).toArray();
+        Random random = ThreadLocalRandom.current();
+        List<BigInteger> estimates = new ArrayList<>();
+        int maxConstraints = 2 * countedVariables.length + 1;
+        for (int trial = 0; trial < ESTIMATE_TRIALS; trial++) {
+            // The XOR constraints of a trial are accumulated, using auxiliary variables above the problem size.
+            BooleanFormula hashedProblem = BooleanFormula.copyOf(problem);
+            int nextFreeVariable = problemSize + 1;
+            for (int constraints = 0; constraints <= maxConstraints; constraints++) {
+                if (constraints > 0) {
+                    int[] xorVariables = Arrays.stream(countedVariables)
+                            .filter(variable -> random.nextBoolean())
+                            .toArray();
+                    nextFreeVariable = addXorConstraint(hashedProblem, xorVariables,
+                            random.nextBoolean(), nextFreeVariable);
+                }
+                long cellSize;
+                try (Stream<DimacsLiterals> modelStream =
+                             models(buildSATSolver(hashedProblem, countedVariables, getProfile(Usage.ENUMERATION)), countedVariables)) {
+                    cellSize = modelStream.limit(ESTIMATE_THRESHOLD + 1).count();
+                }
+                if (cellSize <= ESTIMATE_THRESHOLD) {
+                    estimates.add(BigInteger.valueOf(cellSize).shiftLeft(constraints));
+                    break;
+                }
+            }
+        }
+        if (estimates.isEmpty()) {
+            return countModels(problem);
         }
-        return modelStream;
+        Collections.sort(estimates);
+        return estimates.get(estimates.size() / 2);
     }
 
     /**
@@ -138,7 +477,13 @@ public class SAT4JSolver {
      *
      * <pre>min c1*X1 + c2*X2 + &hellip;</pre>
      *
-     * for each boolean variable <code>Xi</code>.
+     * for each boolean variable <code>Xi</code>. Variables beyond the end of the stream
+     * have a zero coefficient.
+     *
+     * <p>The optimum is found by the SAT4J pseudo-boolean optimizer, which searches
+     * for models with a strictly better objective value until none is left.
+     * If a projection has been set using {@link #setProjection(IntStream)},
+     * the returned model contains only the projection variables.
      *
      * @param constraints
      * @param objective
@@ -148,135 +493,351 @@ public class SAT4JSolver {
     public Optional<DimacsLiterals> solvePseudoBoolean(BooleanFormula constraints, IntStream objective) {
         Objects.requireNonNull(constraints);
         Objects.requireNonNull(objective);
-        ModelIterator solver = buildPBSolver(constraints, objective);
-        Stream<DimacsLiterals> modelStream = models(solver, 1);
-        if (modelStream == null) {
-            return Optional.empty();
+        int[] projectedVariables = projection;
+        int[] coefficients = objective.toArray();
+        return race(Usage.OPTIMIZATION, (profile, stopper) -> {
+            IPBSolver solver = buildPBSolver(constraints, coefficients, profile);
+            if (solver == null) {
+                return Optional.empty();
+            }
+            IPBSolver optimizer = new OptToPBSATAdapter(new PseudoOptDecorator(solver));
+            stopper.accept(optimizer);
+            try {
+                if (!optimizer.isSatisfiable()) {
+                    return Optional.empty();
+                }
+                int[] variables = projectedVariables != null ?
+                        projectedVariables :
+                        IntStream.rangeClosed(1, solver.nVars()).toArray();
+                return Optional.of(new DimacsLiterals(project(optimizer.model(), variables)));
+            } catch (TimeoutException e) {
+                throw new SATRuntimeException(e);
+            } finally {
+                optimizer.reset();
+            }
+        });
+    }
+
+    /**
+     * Finds up to <code>k</code> distinct models of a pseudo-boolean problem,
+     * in order of non-decreasing objective value.
+     * The problem is optimized repeatedly with {@link #solvePseudoBoolean(BooleanFormula, IntStream)};
+     * after each optimum is found, a blocking clause excludes it (or its projection) from the next runs.
+     *
+     * @param constraints
+     * @param objective
+     * @param k the maximum number of models to return
+     * @return
+     * @throws IllegalArgumentException if <code>k</code> is negative
+     */
+    public List<DimacsLiterals> bestModels(BooleanFormula constraints, IntStream objective, int k) {
+        Objects.requireNonNull(constraints);
+        Objects.requireNonNull(objective);
+        if (k < 0) {
+            throw new IllegalArgumentException("negative k: " + k);
         }
-        return modelStream.findFirst();
+        int[] coefficients = objective.toArray();
+        BooleanFormula remaining = BooleanFormula.copyOf(constraints);
+        List<DimacsLiterals> best = new ArrayList<>(k);
+        while (best.size() < k) {
+            Optional<DimacsLiterals> model = solvePseudoBoolean(remaining, Arrays.stream(coefficients));
+            if (!model.isPresent()) {
+                break;
+            }
+            best.add(model.get());
+            remaining.addClause(new DimacsLiterals(model.get().stream().map(literal -> -literal).toArray()));
+        }
+        return best;
     }
 
     /**
-     * If {@link #maxLiteral} is set to {@link #MAXLITERAL_AUTO}, returns the number of variables
-     * in the input problem, otherwise simply returns {@link #maxLiteral}.
+     * Returns the number of variables in the input problem, taking into account the variables
+     * of the cardinality constraints and of the projection.
+     * If {@link #maxLiteral} is not set to {@link #MAXLITERAL_AUTO}, the returned value
+     * is never less than {@link #maxLiteral}.
      *
      * @param problem
      * @return
      */
     private int size(BooleanFormula problem) {
-        if (maxLiteral == MAXLITERAL_AUTO) {
-            return problem.max();
+        int[] projectedVariables = projection;
+        IntStream variables = exactlyOneGroups.stream()
+                .flatMapToInt(Arrays::stream)
+                .map(literal -> literal < 0 ? -literal : literal);
+        if (projectedVariables != null) {
+            variables = IntStream.concat(variables, Arrays.stream(projectedVariables));
         }
-        return maxLiteral;
+        return variables.reduce(Math.max(problem.max(), maxLiteral), Math::max);
     }
 
     /**
-     * Builds a <code>ModelIterator</code> over the models of the input SAT problem.
+     * Returns the constraints registered with {@link #addExactlyOne(DimacsLiterals)}
+     * as CNF clauses: one clause requiring at least one literal per group,
+     * and one binary clause for each pair of literals in the same group.
+     *
+     * @return
+     */
+    private Stream<int[]> cardinalityClauses() {
+        return exactlyOneGroups.stream().flatMap(group -> {
+            Stream.Builder<int[]> builder = Stream.builder();
+            builder.accept(group);
+            for (int i = 0; i < group.length; i++) {
+                for (int j = i + 1; j < group.length; j++) {
+                    builder.accept(new int[]{-group[i], -group[j]});
+                }
+            }
+            return builder.build();
+        });
+    }
+
+    /**
+     * Adds the constraint <code>x1 XOR x2 XOR &hellip; = parity</code> to the specified formula.
+     * The constraint is encoded as a chain of auxiliary variables <code>t1, t2, &hellip;</code>
+     * such that <code>t1 = x1 XOR x2</code>, <code>t2 = t1 XOR x3</code>, and so on.
+     *
+     * @param formula
+     * @param variables the variables <code>x1, x2, &hellip;</code>
+     * @param parity
+     * @param nextFreeVariable the first variable that can be used as an auxiliary variable
+     * @return the first variable that is still free after the encoding
+     */
+    private static int addXorConstraint(BooleanFormula formula, int[] variables,
+                                        boolean parity, int nextFreeVariable) {
+        if (variables.length == 0) {
+            if (parity) {
+                // The empty XOR is false: add the empty clause.
+                formula.addClause(DimacsLiterals.of());
+            }
+            return nextFreeVariable;
+        }
+        int accumulator = variables[0];
+        for (int i = 1; i < variables.length; i++) {
+            int x = variables[i];
+            int t = nextFreeVariable++;
+            formula.addClause(DimacsLiterals.of(-t, accumulator, x));
+            formula.addClause(DimacsLiterals.of(-t, -accumulator, -x));
+            formula.addClause(DimacsLiterals.of(t, -accumulator, x));
+            formula.addClause(DimacsLiterals.of(t, accumulator, -x));
+            accumulator = t;
+        }
+        formula.addLiteral(parity ? accumulator : -accumulator);
+        return nextFreeVariable;
+    }
+
+    /**
+     * Returns a preprocessor that preserves the models projected onto the specified variables.
+     *
+     * @param keptVariables the sorted variables whose assignments must be preserved,
+     *                      or <code>null</code> to preserve every model
+     * @return
+     */
+    private Preprocessor preprocessor(int[] keptVariables) {
+        if (keptVariables == null) {
+            return new Preprocessor();
+        }
+        BitSet groupVariables = new BitSet();
+        exactlyOneGroups.stream()
+                .flatMapToInt(Arrays::stream)
+                .forEach(literal -> groupVariables.set(literal < 0 ? -literal : literal));
+        return new Preprocessor(variable -> !groupVariables.get(variable) &&
+                Arrays.binarySearch(keptVariables, variable) < 0);
+    }
+
+    /**
+     * Adds the constraints registered with {@link #addExactlyOne(DimacsLiterals)} to the specified solver.
+     *
+     * @param solver
+     * @throws ContradictionException if the constraints are trivially unsatisfiable
+     */
+    private void addCardinalityConstraints(ISolver solver) throws ContradictionException {
+        for (int[] group : exactlyOneGroups) {
+            solver.addExactly(new VecInt(group.clone()), 1);
+        }
+    }
+
+    /**
+     * Runs a call that returns a single answer with the profile assigned to the specified use.
+     * If the profile is a {@link SolverProfile.Portfolio}, the call is run once for each of its profiles
+     * on separate threads; the first answer is returned, and the solvers of the other runs are stopped.
+     * @param usage
+     * @param call
+     * @return
+     */
+    private <T> T race(Usage usage, SolverCall<T> call) {
+        SolverProfile profile = getProfile(usage);
+        if (!(profile instanceof SolverProfile.Portfolio)) {
+            return call.run(profile, solver -> {});
+        }
+        List<SolverProfile> members = ((SolverProfile.Portfolio) profile).getMembers();
+        Queue<ISolver> solvers = new ConcurrentLinkedQueue<>();
+        AtomicBoolean isDecided = new AtomicBoolean();
+        Consumer<ISolver> stopper = solver -> {
+            solvers.add(solver);
+            // A run that starts after the race is decided is stopped as well.
+            if (isDecided.get()) solver.expireTimeout();
+        };
+        CompletionService<T> runs = new ExecutorCompletionService<>(PORTFOLIO_EXECUTOR);
+        for (SolverProfile member : members) {
+            runs.submit(() -> call.run(member, stopper));
+        }
+        RuntimeException failure = null;
+        try {
+            for (int i = 0; i < members.size(); i++) {
+                try {
+                    return runs.take().get();
+                } catch (ExecutionException e) {
+                    // The other runs may still answer.
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException ?
+                                (RuntimeException) e.getCause() :
+                                new SATRuntimeException(e.getCause());
+                    }
+                }
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SATRuntimeException(e);
+        } finally {
+            isDecided.set(true);
+            solvers.forEach(ISolver::expireTimeout);
+        }
+    }
+
+    /**
+     * Builds a solver instance for the input SAT problem.
+     * If preprocessing is enabled, the problem is simplified first.
      *
      * @param problem
-     * @return a <code>ModelIterator</code> instance to iterate over the models of the input SAT problem,
+     * @param keptVariables the sorted variables whose assignments must be preserved by preprocessing,
+     *                      or <code>null</code> to preserve every model
+     * @param profile the profile of the solver instance
+     * @return a solver instance loaded with the input SAT problem,
      * or <code>null</code> if the problem is trivially unsatisfiable.
      */
-    private ModelIterator buildSATSolver(BooleanFormula problem) {
-        ISolver solver = SolverFactory.newLight();
+    private ISolver buildSATSolver(BooleanFormula problem, int[] keptVariables, SolverProfile profile) {
+        ISolver solver = profile.newSATSolver();
+        // The number of variables is computed on the original problem,
+        // since preprocessing may remove every occurrence of some variable.
         solver.newVar(size(problem));
-        // Wrap the boolean clauses in an IVec.
-        IVec<IVecInt> problemAsIVec = problem.clauses()
-                .<IVecInt>map(dimacs -> new VecInt(dimacs.literals))
-                .collect(toIVec());
-        solver.setExpectedNumberOfClauses(problemAsIVec.size());
-        // Add the clauses to the solver instance.
+        BooleanFormula clauses = preprocessing ?
+                preprocessor(keptVariables).preprocess(problem).getFormula() :
+                problem;
+        solver.setExpectedNumberOfClauses(clauses.size());
+        // Add the clauses straight from the literal pool of the formula.
+        // SAT4J copies the literals of each clause, so a single buffer can be reused.
+        VecInt buffer = new VecInt();
         try {
-            solver.addAllClauses(problemAsIVec);
+            clauses.forEachClause((pool, from, to) -> {
+                buffer.clear();
+                for (int i = from; i < to; i++) buffer.push(pool[i]);
+                solver.addClause(buffer);
+            });
+            addCardinalityConstraints(solver);
         } catch (ContradictionException e) {
             return null;
         }
-        // Wrap the solver instance in a ModelIterator.
-        return new ModelIterator(solver);
+        return solver;
     }
 
     /**
-     * Builds a <code>ModelIterator</code> over the models of the input pseudo-boolean problem.
+     * Builds a solver instance for the input pseudo-boolean problem.
      * See the javadoc of {@link #solvePseudoBoolean(BooleanFormula, IntStream)} for details
      * about the parameters.
      *
      * @param constraints
-     * @param objective
-     * @return a <code>ModelIterator</code> instance to iterate over the models of the
-     * input pseudo-boolean problem, or <code>null</code> if the problem is trivially unsatisfiable.
+     * @param objectiveCoefficients
+     * @param profile the profile of the solver instance
+     * @return a solver instance loaded with the input pseudo-boolean problem,
+     * or <code>null</code> if the problem is trivially unsatisfiable.
      */
-    private ModelIterator buildPBSolver(BooleanFormula constraints, IntStream objective) {
-        int problemSize = size(constraints);
-        IPBSolver solver = org.sat4j.pb.SolverFactory.newLight();
+    private IPBSolver buildPBSolver(BooleanFormula constraints, int[] objectiveCoefficients, SolverProfile profile) {
+        int problemSize = Math.max(size(constraints), objectiveCoefficients.length);
+        IPBSolver solver = profile.newPBSolver();
         solver.newVar(problemSize);
+        // Pure literal elimination would ignore the objective function, hence it is not applied.
+        BooleanFormula clauses = preprocessing ?
+                new Preprocessor().preprocess(constraints).getFormula() :
+                constraints;
         // Convert boolean clauses into linear constraints.
-        for (Iterator<DimacsLiterals> clauses = constraints.clauses().iterator(); clauses.hasNext(); ) {
-            DimacsLiterals dimacs = clauses.next();
-            int[] literalsAbsolute = dimacs.stream()
-                    .map(value -> value < 0 ? -value : value)
-                    .toArray();
-            int[] coefficients = dimacs.stream()
-                    .map(value -> value < 0 ? -1 : 1)
-                    .toArray();
-            int numberOfNegated = dimacs.stream()
-                    .filter(value -> value < 0)
-                    .map(value -> 1)
-                    .sum();
-            try {
-                solver.addAtLeast(
-                        new VecInt(literalsAbsolute),
-                        new VecInt(coefficients),
-                        1 - numberOfNegated);
-            } catch (ContradictionException e) {
-                return null;
-            }
+        try {
+            clauses.forEachClause((pool, from, to) -> {
+                VecInt literalsAbsolute = new VecInt(to - from);
+                VecInt coefficients = new VecInt(to - from);
+                int numberOfNegated = 0;
+                for (int i = from; i < to; i++) {
+                    int literal = pool[i];
+                    literalsAbsolute.push(literal < 0 ? -literal : literal);
+                    coefficients.push(literal < 0 ? -1 : 1);
+                    if (literal < 0) numberOfNegated++;
+                }
+                solver.addAtLeast(literalsAbsolute, coefficients, 1 - numberOfNegated);
+            });
+        } catch (ContradictionException e) {
+            return null;
+        }
+        try {
+            addCardinalityConstraints(solver);
+        } catch (ContradictionException e) {
+            return null;
         }
         // Build the objective function.
         int[] problemVars = IntStream.rangeClosed(1, problemSize).toArray();
-        IVec<BigInteger> coefficients = objective
+        IVec<BigInteger> coefficients = Arrays.stream(Arrays.copyOf(objectiveCoefficients, problemSize))
                 .mapToObj(BigInteger::valueOf)
                 .collect(toIVec());
         solver.setObjectiveFunction(
                 new ObjectiveFunction(new VecInt(problemVars), coefficients));
-        // Wrap the solver instance in a ModelIterator.
-        return new ModelIterator(solver);
+        return solver;
     }
 
     /**
-     * Finds up to <code>maxResults</code> models using the specified <code>ModelIterator</code>.
+     * Returns a lazy <code>Stream</code> over the models of the problem loaded into the specified solver.
+     * The solver is reset when the models are exhausted or the returned stream is closed,
+     * whichever comes first.
      *
-     * @param solver a <code>ModelIterator</code> instance to iterate over the models
-     *               of the underlying problem. If <code>null</code>, this method simply
-     *               returns <code>null</code>.
-     * @param maxResults the maximum number of models to return. A value of {@link #MAXRESULTS_UNLIMITED}
-     *                   indicates that all models should be returned.
-     * @return up to <code>maxResults</code> models of the underlying problem,
-     * or <code>null</code> if the problem is unsatisfiable
+     * @param solver a solver instance loaded with the underlying problem.
+     *               If <code>null</code>, an empty <code>Stream</code> is returned.
+     * @param projection the sorted variables onto which models are projected,
+     *                   or <code>null</code> if models should not be projected
+     * @return the models of the underlying problem, or an empty <code>Stream</code>
+     * if the problem is unsatisfiable
      */
-    private Stream<DimacsLiterals> models(ModelIterator solver, int maxResults) {
+    private static Stream<DimacsLiterals> models(ISolver solver, int[] projection) {
         if (solver == null) {
-            return null;
+            return Stream.empty();
         }
-        Stream.Builder<DimacsLiterals> builder = Stream.builder();
-        try {
-            if (!solver.isSatisfiable()) {
-                return null;
-            }
-            if (maxResults > 0) {
-                builder.accept(new DimacsLiterals(solver.model()));
-            }
-            while ((maxResults == MAXRESULTS_UNLIMITED || solver.numberOfModelsFoundSoFar() < maxResults)
-                    && solver.isSatisfiable()) {
-                builder.accept(new DimacsLiterals(solver.model()));
+        ModelSpliterator spliterator = new ModelSpliterator(solver, projection);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::release);
+    }
+
+    /**
+     * Restricts the specified model to the projection variables.
+     * Projection variables left unassigned by the solver are considered false;
+     * when enumerating, the blocking clause then lets the solver find the complementary model too.
+     *
+     * @param model a model returned by a SAT4J solver
+     * @param projection the sorted variables onto which <code>model</code> is projected
+     * @return the literals of the projection variables, in the same order as <code>projection</code>
+     */
+    private static int[] project(int[] model, int[] projection) {
+        if (projection.length == 0) {
+            return new int[0];
+        }
+        int[] valuesByVariable = new int[projection[projection.length - 1] + 1];
+        for (int literal : model) {
+            int variable = literal < 0 ? -literal : literal;
+            if (variable < valuesByVariable.length) {
+                valuesByVariable[variable] = literal;
             }
-        } catch (TimeoutException e) {
-            throw new SATRuntimeException(e);
-        } finally {
-            // Free the resources acquired by solver.
-            // This call prevents memory leak issues in the SAT4J library.
-            solver.reset();
         }
-        return builder.build();
+        int[] projected = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            int variable = projection[i];
+            projected[i] = valuesByVariable[variable] != 0 ? valuesByVariable[variable] : -variable;
+        }
+        return projected;
     }
 
     /**
@@ -294,4 +855,91 @@ public class SAT4JSolver {
         );
     }
 
+    /**
+     * A <code>Spliterator</code> that searches for the next model of a solver
+     * only when it is asked to advance.
+     * After each model is found, a blocking clause is added to the solver to exclude
+     * any other model with the same projection.
+     */
+    private static class ModelSpliterator extends Spliterators.AbstractSpliterator<DimacsLiterals> {
+        /**
+         * The solver that finds the models, or <code>null</code> once it has been released.
+         */
+        private ISolver solver;
+
+        /**
+         * The sorted variables onto which models are projected.
+         */
+        private int[] projection;
+
+        /**
+         * @param solver
+         * @param projection the sorted variables onto which models are projected, or <code>null</code>
+         *                   to project models onto every variable of the solver. Since SAT4J omits
+         *                   unconstrained variables from its models, an explicit projection
+         *                   is needed to enumerate complete models.
+         */
+        private ModelSpliterator(ISolver solver, int[] projection) {
+            super(Long.MAX_VALUE, Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+            this.solver = solver;
+            this.projection = projection != null ?
+                    projection :
+                    IntStream.rangeClosed(1, solver.nVars()).toArray();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super DimacsLiterals> action) {
+            Objects.requireNonNull(action);
+            if (solver == null) {
+                return false;
+            }
+            boolean hasNext;
+            try {
+                hasNext = solver.isSatisfiable();
+            } catch (TimeoutException e) {
+                release();
+                throw new SATRuntimeException(e);
+            }
+            if (!hasNext) {
+                release();
+                return false;
+            }
+            int[] model = project(solver.model(), projection);
+            // Block the current model (or its projection).
+            int[] blockingClause = Arrays.stream(model).map(literal -> -literal).toArray();
+            try {
+                solver.addBlockingClause(new VecInt(blockingClause));
+            } catch (ContradictionException e) {
+                // No other model exists.
+                release();
+            }
+            action.accept(new DimacsLiterals(model));
+            return true;
+        }
+
+        /**
+         * Frees the resources acquired by the solver.
+         * This call prevents memory leak issues in the SAT4J library.
+         */
+        private void release() {
+            if (solver != null) {
+                solver.reset();
+                solver = null;
+            }
+        }
+    }
+
+
+    /**
+     * A call to a solver, run by {@link #race(Usage, SolverCall)}.
+     */
+    @FunctionalInterface
+    private interface SolverCall<T> {
+        /**
+         * @param profile the profile of the solvers to create
+         * @param stopper accepts the created solvers, so that they can be stopped when the answer is no longer needed
+         * @return
+         */
+        T run(SolverProfile profile, Consumer<ISolver> stopper);
+    }
 }
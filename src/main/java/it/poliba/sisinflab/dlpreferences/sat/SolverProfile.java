@@ -0,0 +1,136 @@
+package it.poliba.sisinflab.dlpreferences.sat;
+
+import org.sat4j.pb.IPBSolver;
+import org.sat4j.specs.ISolver;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A configuration of the SAT4J solvers created by {@link SAT4JSolver}.
+ * Profiles determine the restart policy, the learning strategy and the size of the learned clause database,
+ * and can be selected independently for each use of the solver (see {@link SAT4JSolver.Usage}).
+ */
+public interface SolverProfile {
+    /**
+     * A lightweight MiniSAT-style solver, suitable for many small problems.
+     */
+    SolverProfile LIGHT = of("light",
+            org.sat4j.minisat.SolverFactory::newLight,
+            org.sat4j.pb.SolverFactory::newLight);
+
+    /**
+     * The SAT4J default solver, with more aggressive learning and clause database management.
+     */
+    SolverProfile DEFAULT = of("default",
+            org.sat4j.minisat.SolverFactory::newDefault,
+            org.sat4j.pb.SolverFactory::newDefault);
+
+    /**
+     * A Glucose-style solver, which uses the literal block distance to manage learned clauses
+     * and restarts frequently; suitable for hard problems.
+     */
+    SolverProfile GLUCOSE = of("glucose",
+            org.sat4j.minisat.SolverFactory::newGlucose21,
+            org.sat4j.pb.SolverFactory::newResolutionGlucose21);
+
+    /**
+     * Creates a new SAT solver instance.
+     * @return
+     */
+    ISolver newSATSolver();
+
+    /**
+     * Creates a new pseudo-boolean solver instance.
+     * @return
+     */
+    IPBSolver newPBSolver();
+
+    /**
+     * Returns a profile that creates solvers from the specified factories.
+     * @param name
+     * @param satSolverFactory
+     * @param pbSolverFactory
+     * @return
+     */
+    static SolverProfile of(String name,
+                            Supplier<? extends ISolver> satSolverFactory,
+                            Supplier<? extends IPBSolver> pbSolverFactory) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(satSolverFactory);
+        Objects.requireNonNull(pbSolverFactory);
+        return new SolverProfile() {
+            @Override
+            public ISolver newSATSolver() {
+                return satSolverFactory.get();
+            }
+
+            @Override
+            public IPBSolver newPBSolver() {
+                return pbSolverFactory.get();
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * Returns a portfolio profile, which races the specified profiles on separate threads.
+     * Calls of {@link SAT4JSolver} that return a single answer (satisfiability and implication checks,
+     * backbones and pseudo-boolean optimization) are run once for each profile, and the first answer is
+     * returned while the other solvers are stopped. Portfolios pay off on hard problems only, since each
+     * such call costs a thread per profile.
+     * Model enumeration and incremental checks are not raced, and use the first profile.
+     * @param profiles at least two profiles
+     * @return
+     * @throws IllegalArgumentException if less than two profiles are specified
+     */
+    static Portfolio portfolio(SolverProfile... profiles) {
+        if (profiles.length < 2) {
+            throw new IllegalArgumentException("a portfolio requires at least two profiles");
+        }
+        for (SolverProfile profile : profiles) Objects.requireNonNull(profile);
+        return new Portfolio(Arrays.asList(profiles.clone()));
+    }
+
+    /**
+     * A profile that races other profiles; see {@link #portfolio(SolverProfile...)}.
+     * Solvers created directly from a portfolio are created from its first profile.
+     */
+    final class Portfolio implements SolverProfile {
+        private List<SolverProfile> members;
+
+        private Portfolio(List<SolverProfile> members) {
+            this.members = Collections.unmodifiableList(members);
+        }
+
+        /**
+         * Returns the profiles raced by this portfolio.
+         * @return an immutable <code>List</code>
+         */
+        public List<SolverProfile> getMembers() {
+            return members;
+        }
+
+        @Override
+        public ISolver newSATSolver() {
+            return members.get(0).newSATSolver();
+        }
+
+        @Override
+        public IPBSolver newPBSolver() {
+            return members.get(0).newPBSolver();
+        }
+
+        @Override
+        public String toString() {
+            return members.toString();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import it.poliba.sisinflab.dlpreferences.sat.DimacsLiterals;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link ClauseAxiomFactory}.
+ */
+public class ClauseAxiomFactoryTest {
+    private static final String BASE_IRI = "http://www.semanticweb.org/test#";
+
+    @Test(dataProvider = "clauseProvider")
+    public void testClauseAxiom(DimacsLiterals clause) {
+        OWLDataFactory dataFactory = OWLManager.getOWLDataFactory();
+        ClauseAxiomFactory axiomFactory =
+                new ClauseAxiomFactory(dataFactory, 5, literal -> IRI.create(BASE_IRI + "v" + literal));
+        FeasibilityConstraint constraint = new FeasibilityConstraint(clause, literal -> "v" + literal);
+        Assert.assertEquals(axiomFactory.clauseAxiom(clause),
+                constraint.asAxiom(dataFactory, name -> IRI.create(BASE_IRI + name)));
+    }
+
+    @DataProvider
+    public Object[][] clauseProvider() {
+        return new Object[][]{
+                {DimacsLiterals.of(1)},
+                {DimacsLiterals.of(-2)},
+                {DimacsLiterals.of(1, -3, 5)},
+                {DimacsLiterals.of(-1, -2, -3, -4, -5)}
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import org.semanticweb.HermiT.ReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Tests for {@link EntailmentCache}.
+ */
+public class EntailmentCacheTest {
+    private static final OWLDataFactory DATA_FACTORY = OWLManager.getOWLDataFactory();
+
+    private static OWLClass owlClass(String name) {
+        return DATA_FACTORY.getOWLClass(IRI.create("http://example.org/test#" + name));
+    }
+
+    @Test
+    public void testOntologyKey() {
+        OWLAxiom first = DATA_FACTORY.getOWLEquivalentClassesAxiom(owlClass("a1"),
+                DATA_FACTORY.getOWLObjectIntersectionOf(owlClass("X"), owlClass("Y")));
+        OWLAxiom second = DATA_FACTORY.getOWLDisjointUnionAxiom(DATA_FACTORY.getOWLThing(),
+                Stream.of(owlClass("a1"), owlClass("a2")));
+        // Neither the order of the axioms, nor the order of their operands, matter.
+        OWLAxiom firstReordered = DATA_FACTORY.getOWLEquivalentClassesAxiom(owlClass("a1"),
+                DATA_FACTORY.getOWLObjectIntersectionOf(owlClass("Y"), owlClass("X")));
+        OWLReasonerFactory reasonerFactory = new ReasonerFactory();
+        Assert.assertEquals(EntailmentCache.ontologyKey(reasonerFactory, "base", Stream.of(first, second)),
+                EntailmentCache.ontologyKey(reasonerFactory, "base", Stream.of(second, firstReordered)));
+        Assert.assertNotEquals(EntailmentCache.ontologyKey(reasonerFactory, "base", Stream.of(first, second)),
+                EntailmentCache.ontologyKey(reasonerFactory, "other", Stream.of(first, second)));
+        Assert.assertNotEquals(EntailmentCache.ontologyKey(reasonerFactory, "base", Stream.of(first, second)),
+                EntailmentCache.ontologyKey(reasonerFactory, "base", Stream.of(first)));
+        // Checks made by a different reasoner are not shared.
+        Assert.assertNotEquals(EntailmentCache.ontologyKey(reasonerFactory, "base", Stream.of(first, second)),
+                EntailmentCache.ontologyKey(new StructuralReasonerFactory(), "base", Stream.of(first, second)));
+    }
+
+    @Test
+    public void testIsEntailed() throws Exception {
+        Path directory = Files.createTempDirectory("entailments");
+        try {
+            OWLAxiom axiom = DATA_FACTORY.getOWLSubClassOfAxiom(owlClass("a1"), owlClass("b1"));
+            AtomicInteger checks = new AtomicInteger();
+            EntailmentCache cache = EntailmentCache.withDiskTier(1, directory);
+            Assert.assertTrue(cache.isEntailed("key", axiom, () -> checks.incrementAndGet() > 0));
+            Assert.assertTrue(cache.isEntailed("key", axiom, () -> checks.incrementAndGet() < 0));
+            Assert.assertEquals(checks.get(), 1);
+            // A different ontology key requires a new check.
+            Assert.assertFalse(cache.isEntailed("other", axiom, () -> checks.incrementAndGet() < 0));
+            Assert.assertEquals(checks.get(), 2);
+            // Evicted entries, and entries of other caches over the same directory, are read from disk.
+            Assert.assertEquals(cache.size(), 1);
+            EntailmentCache laterCache = EntailmentCache.withDiskTier(1, directory);
+            Assert.assertTrue(laterCache.isEntailed("key", axiom, () -> checks.incrementAndGet() < 0));
+            Assert.assertEquals(checks.get(), 2);
+        } finally {
+            try (Stream<Path> entries = Files.list(directory)) {
+                for (Path entry : (Iterable<Path>) entries::iterator) {
+                    Files.delete(entry);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+}
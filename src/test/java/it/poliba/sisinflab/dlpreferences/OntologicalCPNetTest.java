@@ -30,6 +30,9 @@ import java.util.stream.Stream;
 public class OntologicalCPNetTest {
     private OntologicalCPNet cpnet;
     private OWLOntology constrained;
+    private CPNet baseCPNet;
+    private OWLOntology baseOntology;
+    private Map<String, OWLClassExpression> preferences;
 
     @Parameters({"nusmv-path", "hotel-cpnet-resource",
                  "hotel-base-ontology-resource", "hotel-constrained-ontology-resource"})
@@ -38,7 +41,7 @@ public class OntologicalCPNetTest {
             throws Exception {
         // Load the base ontology.
         File baseOntologyFile = new File(OntologicalCPNet.class.getResource(baseOntologyRes).toURI());
-        OWLOntology baseOntology = OWLManager.createOWLOntologyManager()
+        baseOntology = OWLManager.createOWLOntologyManager()
                 .loadOntologyFromOntologyDocument(baseOntologyFile);
         // Load the constrained ontology with a different manager to avoid conflicts.
         File constrainedOntologyFile = new File(OntologicalCPNet.class.getResource(constrainedOntologyRes).toURI());
@@ -47,10 +50,9 @@ public class OntologicalCPNetTest {
         // Build the mapping that will be converted into class definition axioms.
         Path nusmvPath = Paths.get(nusmvPathRes);
         Path xmlSpec = Paths.get(OntologicalCPNet.class.getResource(xmlSpecRes).toURI());
-        CPNet baseCPNet = new CPNet(xmlSpec, nusmvPath);
+        baseCPNet = new CPNet(xmlSpec, nusmvPath);
         Stream<String> domainValues = baseCPNet.getPreferenceGraph().domainValues();
-        Map<String, OWLClassExpression> preferences =
-                collectOntologicalPreferences(constrainedOntology, domainValues);
+        preferences = collectOntologicalPreferences(constrainedOntology, domainValues);
         // Build the OntologicalCPNet instance.
         OntologicalCPNet.Builder cpnetBuilder = OntologicalCPNet.builder(baseCPNet, baseOntology);
         for (Map.Entry<String, OWLClassExpression> preferenceEntry : preferences.entrySet()) {
@@ -61,9 +63,25 @@ public class OntologicalCPNetTest {
     }
 
     public void testConstrainedOntology() throws Exception {
-        cpnet.ontology.logicalAxioms().forEach(
+        cpnet.getOntology().logicalAxioms().forEach(
                 axiom -> Assert.assertTrue(constrained.containsAxiomIgnoreAnnotations(axiom)));
-        Assert.assertEquals(cpnet.ontology.getLogicalAxiomCount(), constrained.getLogicalAxiomCount());
+        Assert.assertEquals(cpnet.getOntology().getLogicalAxiomCount(), constrained.getLogicalAxiomCount());
+    }
+
+    public void testProviderContext() throws Exception {
+        ProviderContext providerContext = ProviderContext.create(baseOntology);
+        OntologicalCPNet.Builder cpnetBuilder = OntologicalCPNet.builder(baseCPNet, providerContext);
+        preferences.forEach(cpnetBuilder::addPreferenceDefinition);
+        OntologicalCPNet overlayCPNet = cpnetBuilder.build();
+        OWLOntology overlay = overlayCPNet.getOntology();
+        // The overlay only contains the new axioms, and imports the provider ontology.
+        Assert.assertEquals(overlay.getLogicalAxiomCount(),
+                cpnet.getOntology().getLogicalAxiomCount() - baseOntology.getLogicalAxiomCount());
+        Assert.assertEquals(overlay.importsClosure().flatMap(OWLOntology::logicalAxioms).collect(Collectors.toSet()),
+                cpnet.getOntology().logicalAxioms().collect(Collectors.toSet()));
+        overlayCPNet.dispose();
+        Assert.assertFalse(providerContext.getOntology().getOWLOntologyManager().contains(overlay));
+        providerContext.dispose();
     }
 
     @Test(dataProvider = "optimalityConstraintProvider")
@@ -152,7 +170,29 @@ public class OntologicalCPNetTest {
 
     @Test(dataProvider = "paretoOutcomeProvider")
     public void testHardPareto(Set<Map<String, String>> outcomesAsMaps) throws Exception {
-        Set<Outcome> cpnetOutcomes = cpnet.paretoOptimal();
+        // The swept outcome is feasible: the result of the forward sweep must match the enumeration.
+        assertParetoOptimal(cpnet.paretoOptimal(), outcomesAsMaps);
+        assertParetoOptimal(cpnet.enumerateParetoOptimal(), outcomesAsMaps);
+    }
+
+    public void testHardParetoInfeasibleSweep() throws Exception {
+        // Hotels with WiFi are ruled out, so the swept outcome (W=Wy) is infeasible under the closure.
+        OntologicalCPNet.Builder cpnetBuilder = OntologicalCPNet.builder(baseCPNet, baseOntology);
+        preferences.forEach((domainValue, definition) -> cpnetBuilder.addPreferenceDefinition(domainValue,
+                domainValue.equals("Wy") ? OWLManager.getOWLDataFactory().getOWLNothing() : definition));
+        OntologicalCPNet noWiFiCPNet = cpnetBuilder.build();
+        Set<Map<String, String>> outcomesAsMaps = ImmutableSet.of(ImmutableMap.<String, String>builder()
+                .put("R", "Rl")
+                .put("W", "Wn")
+                .put("B", "Bn")
+                .put("C", "Cy")
+                .put("P", "Pl")
+                .build());
+        assertParetoOptimal(noWiFiCPNet.paretoOptimal(), outcomesAsMaps);
+        assertParetoOptimal(noWiFiCPNet.enumerateParetoOptimal(), outcomesAsMaps);
+    }
+
+    private static void assertParetoOptimal(Set<Outcome> cpnetOutcomes, Set<Map<String, String>> outcomesAsMaps) {
         Set<Map<String, String>> cpnetOutcomesAsMaps = cpnetOutcomes.stream()
                 .map(Outcome::getOutcomeAsValuationMap)
                 .collect(Collectors.toSet());
@@ -0,0 +1,86 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import it.poliba.sisinflab.dlpreferences.sat.DimacsLiterals;
+import model.Outcome;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Tests for {@link OutcomeCodec} and {@link CompactOutcomeSet}.
+ */
+public class OutcomeCodecTest {
+
+    @Test(dataProvider = "domainProvider")
+    public void testRoundTrip(Map<String, Set<String>> domainMap, int expectedWidth) throws Exception {
+        List<String> values = domainMap.values().stream()
+                .flatMap(Set::stream)
+                .collect(Collectors.toList());
+        OutcomeCodec codec = new OutcomeCodec(domainMap, value -> values.indexOf(value) + 1);
+        Assert.assertEquals(codec.width(), expectedWidth);
+        Random random = new Random(domainMap.size());
+        CompactOutcomeSet set = new CompactOutcomeSet(codec.width());
+        Set<Outcome> expected = new HashSet<>();
+        long[] code = new long[codec.width()];
+        for (int i = 0; i < 500; i++) {
+            // Pick a random value for each variable; negative literals are ignored by the codec.
+            Map<String, String> assignments = new HashMap<>();
+            IntStream.Builder model = IntStream.builder();
+            domainMap.forEach((variable, domain) -> {
+                List<String> domainValues = new ArrayList<>(domain);
+                String value = domainValues.get(random.nextInt(domainValues.size()));
+                assignments.put(variable, value);
+                domainValues.forEach(other -> model.accept(
+                        other.equals(value) ? values.indexOf(other) + 1 : -values.indexOf(other) - 1));
+            });
+            Outcome outcome = new Outcome(assignments);
+            codec.encode(DimacsLiterals.of(model.build().toArray()), code);
+            Assert.assertEquals(codec.decode(code, 0), outcome);
+            Assert.assertEquals(set.add(code), expected.add(outcome));
+            Assert.assertTrue(set.contains(code, 0));
+        }
+        Assert.assertEquals(set.size(), expected.size());
+        Set<Outcome> decoded = IntStream.range(0, set.size())
+                .mapToObj(i -> codec.decode(set.codes(), i * codec.width()))
+                .collect(Collectors.toSet());
+        Assert.assertEquals(decoded, expected);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testIncompleteModel() {
+        Map<String, Set<String>> domainMap = domains(2, 2);
+        OutcomeCodec codec = new OutcomeCodec(domainMap, value -> Integer.parseInt(value.substring(1)));
+        codec.encode(DimacsLiterals.of(1, -2, -3, -4), new long[codec.width()]);
+    }
+
+    @DataProvider
+    public Object[][] domainProvider() {
+        return new Object[][]{
+                {domains(5, 2, 3), 1},
+                {domains(62, 2), 1},
+                {domains(63, 2), 2},
+                {domains(100, 3, 4, 5), 4}
+        };
+    }
+
+    /**
+     * Returns <code>count</code> variables <i>Xi</i> with domain values <i>vj</i>,
+     * whose domain sizes cycle through <code>sizes</code>.
+     */
+    private static Map<String, Set<String>> domains(int count, int... sizes) {
+        Map<String, Set<String>> domainMap = new LinkedHashMap<>();
+        int value = 1;
+        for (int i = 0; i < count; i++) {
+            Set<String> domain = new LinkedHashSet<>();
+            for (int j = 0; j < sizes[i % sizes.length]; j++) {
+                domain.add("v" + value++);
+            }
+            domainMap.put("X" + i, domain);
+        }
+        return domainMap;
+    }
+}
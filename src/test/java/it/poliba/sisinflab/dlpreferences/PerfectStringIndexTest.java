@@ -0,0 +1,38 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.stream.IntStream;
+
+/**
+ * Tests for {@link PerfectStringIndex}.
+ */
+public class PerfectStringIndexTest {
+
+    @Test(dataProvider = "stringProvider")
+    public void testIndexOf(String[] strings) {
+        PerfectStringIndex index = new PerfectStringIndex(strings);
+        for (int i = 0; i < strings.length; i++) {
+            Assert.assertEquals(index.indexOf(strings[i]), i);
+            Assert.assertEquals(index.indexOf(strings[i] + "_"), -1);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDuplicates() {
+        new PerfectStringIndex(new String[]{"a1", "a2", "a1"});
+    }
+
+    @DataProvider
+    public Object[][] stringProvider() {
+        return new Object[][]{
+                {new String[0]},
+                {new String[]{"Wy"}},
+                // Strings with the same hash code.
+                {new String[]{"Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa"}},
+                {IntStream.range(0, 5000).mapToObj(i -> "v" + i).toArray(String[]::new)}
+        };
+    }
+}
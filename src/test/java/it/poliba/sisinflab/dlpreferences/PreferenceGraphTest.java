@@ -0,0 +1,203 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for {@link PreferenceGraph}.
+ */
+public class PreferenceGraphTest {
+
+    /**
+     * Returns a builder for a graph where <i>C</i> depends on <i>A</i> and <i>B</i>,
+     * and the preferences on <i>C</i> are expressed with partial conditions.
+     */
+    private static PreferenceGraph.Builder graphBuilder() {
+        return PreferenceGraph.builder()
+                .addDomainValues("A", "a1", "a2")
+                .addDomainValues("B", "b1", "b2", "b3")
+                .addDomainValues("C", "c1", "c2")
+                .addConstraints("A", OptimalityConstraint.builder().addToClause("a1").build())
+                .addConstraints("B", OptimalityConstraint.builder().addToClause("b2").build())
+                .addParentNodes("C", "A", "B")
+                .addConstraints("C",
+                        OptimalityConstraint.builder().addToCondition("a1").addToClause("c1").build(),
+                        OptimalityConstraint.builder().addToCondition("a2", "b1").addToClause("c1").build(),
+                        OptimalityConstraint.builder().addToCondition("a2", "b2").addToClause("c2").build(),
+                        OptimalityConstraint.builder().addToCondition("a2", "b3").addToClause("c2").build());
+    }
+
+    @Test
+    public void testPreferredValues() {
+        PreferenceGraph graph = graphBuilder().build();
+        Assert.assertEquals(graph.preferredValues("A", ImmutableMap.of()), ImmutableSet.of("a1"));
+        Assert.assertEquals(graph.preferredValues("C", ImmutableMap.of("A", "a1", "B", "b3")),
+                ImmutableSet.of("c1"));
+        Assert.assertEquals(graph.preferredValues("C", ImmutableMap.of("A", "a2", "B", "b1", "C", "c2")),
+                ImmutableSet.of("c1"));
+        Assert.assertEquals(graph.preferredValues("C", ImmutableMap.of("A", "a2", "B", "b3")),
+                ImmutableSet.of("c2"));
+    }
+
+    @Test
+    public void testLongForm() {
+        Set<OptimalityConstraint> optimumSet = graphBuilder().build().getOptimumSet();
+        // 1 + 1 + 2 * 3 parent assignments.
+        Assert.assertEquals(optimumSet.size(), 8);
+        Assert.assertTrue(optimumSet.contains(
+                OptimalityConstraint.builder().addToCondition("a1", "b2").addToClause("c1").build()));
+    }
+
+    @Test
+    public void testCompactForm() {
+        PreferenceGraph graph = graphBuilder()
+                // A redundant constraint, and a constraint that never applies.
+                .addConstraints("C",
+                        OptimalityConstraint.builder().addToCondition("a1", "b1").addToClause("c1").build(),
+                        OptimalityConstraint.builder().addToCondition("a2", "c1").addToClause("c1").build())
+                .build();
+        Set<OptimalityConstraint> compactOptimumSet = graph.getCompactOptimumSet();
+        Set<OptimalityConstraint> optimumSet = graph.getOptimumSet();
+        Assert.assertEquals(compactOptimumSet.size(), 6);
+        Assert.assertEquals(new HashSet<>(optimumSet), optimumSet);
+        // Both forms are satisfied by the same outcomes.
+        for (List<String> outcome : Sets.cartesianProduct(
+                ImmutableSet.of("a1", "a2"), ImmutableSet.of("b1", "b2", "b3"), ImmutableSet.of("c1", "c2"))) {
+            Assert.assertEquals(isSatisfied(compactOptimumSet, outcome), isSatisfied(optimumSet, outcome), outcome.toString());
+        }
+    }
+
+    private static boolean isSatisfied(Set<OptimalityConstraint> constraints, List<String> outcome) {
+        return constraints.stream().allMatch(constraint -> !outcome.containsAll(constraint.condition) ||
+                constraint.clause.stream().anyMatch(outcome::contains));
+    }
+
+    @Test
+    public void testSweepOptimal() {
+        PreferenceGraph graph = graphBuilder().build();
+        Assert.assertTrue(graph.isAcyclic());
+        List<String> order = graph.topologicalOrder();
+        Assert.assertTrue(order.indexOf("C") > order.indexOf("A") && order.indexOf("C") > order.indexOf("B"));
+        Assert.assertEquals(graph.sweepOptimal(ImmutableMap.of()).get(),
+                ImmutableMap.of("A", "a1", "B", "b2", "C", "c1"));
+        Assert.assertEquals(graph.sweepOptimal(ImmutableMap.of("A", "a2")).get(),
+                ImmutableMap.of("A", "a2", "B", "b2", "C", "c2"));
+        Assert.assertEquals(graph.sweepOptimal(ImmutableMap.of("A", "a2", "C", "c1")).get(),
+                ImmutableMap.of("A", "a2", "B", "b2", "C", "c1"));
+    }
+
+    @Test
+    public void testCycle() {
+        PreferenceGraph graph = PreferenceGraph.builder()
+                .addDomainValues("A", "a1", "a2")
+                .addDomainValues("B", "b1", "b2")
+                .addDomainValues("C", "c1", "c2")
+                .addConstraints("A", OptimalityConstraint.builder().addToClause("a1").build())
+                .addParentNodes("B", "A", "C")
+                .addConstraints("B", OptimalityConstraint.builder().addToCondition("c1").addToClause("b1").build())
+                .addConstraints("B", OptimalityConstraint.builder().addToCondition("c2").addToClause("b2").build())
+                .addParentNodes("C", "B")
+                .addConstraints("C", OptimalityConstraint.builder().addToCondition("b1").addToClause("c1").build())
+                .addConstraints("C", OptimalityConstraint.builder().addToCondition("b2").addToClause("c2").build())
+                .build();
+        Assert.assertFalse(graph.isAcyclic());
+        List<String> cycle = graph.findCycle().get();
+        Assert.assertEquals(ImmutableSet.copyOf(cycle), ImmutableSet.of("B", "C"));
+        Assert.assertEquals(cycle.size(), 2);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "cyclic preference graph: B -> B")
+    public void testSelfLoop() {
+        PreferenceGraph.builder()
+                .addDomainValues("B", "b1", "b2")
+                .addParentNodes("B", "B")
+                .addConstraints("B", OptimalityConstraint.builder().addToCondition("b1").addToClause("b1").build())
+                .addConstraints("B", OptimalityConstraint.builder().addToCondition("b2").addToClause("b2").build())
+                .build()
+                .topologicalOrder();
+    }
+
+    @Test
+    public void testDescendantClosedSubset() {
+        PreferenceGraph graph = graphBuilder()
+                .addDomainValues("D", "d1", "d2")
+                .addConstraints("D", OptimalityConstraint.builder().addToClause("d1").build())
+                .build();
+        Assert.assertEquals(graph.descendantClosedSubset(ImmutableSet.of("A", "D")), ImmutableSet.of("D"));
+        Assert.assertEquals(graph.descendantClosedSubset(ImmutableSet.of("C", "D")), ImmutableSet.of("C", "D"));
+        // D is more important than A: an improving flip of D may change A, so D needs A.
+        PreferenceGraph importanceGraph = graphBuilder()
+                .addDomainValues("D", "d1", "d2")
+                .addConstraints("D", OptimalityConstraint.builder().addToClause("d1").build())
+                .addLessImportantVariables("D", "A")
+                .build();
+        Assert.assertEquals(importanceGraph.descendantClosedSubset(ImmutableSet.of("C", "D")), ImmutableSet.of("C"));
+        Assert.assertEquals(importanceGraph.descendantClosedSubset(ImmutableSet.of("A", "C", "D")),
+                ImmutableSet.of("A", "C", "D"));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "invalid less important variable.*")
+    public void testUnknownLessImportantVariable() {
+        graphBuilder().addLessImportantVariables("A", "E").build();
+    }
+
+    @Test
+    public void testConnectedComponents() {
+        PreferenceGraph graph = graphBuilder()
+                .addDomainValues("D", "d1", "d2")
+                .addConstraints("D", OptimalityConstraint.builder().addToClause("d2").build())
+                .addDomainValues("E", "e1", "e2")
+                .addConstraints("E", OptimalityConstraint.builder().addToClause("e1").build())
+                .build();
+        Assert.assertEquals(ImmutableSet.copyOf(graph.connectedComponents(ImmutableSet.of())),
+                ImmutableSet.of(ImmutableSet.of("A", "B", "C"), ImmutableSet.of("D"), ImmutableSet.of("E")));
+        // A clause that mentions D and E joins their components.
+        FeasibilityConstraint clause = FeasibilityConstraint.builder().addPositive("d1").addNegated("e2").build();
+        Assert.assertEquals(ImmutableSet.copyOf(graph.connectedComponents(ImmutableSet.of(clause))),
+                ImmutableSet.of(ImmutableSet.of("A", "B", "C"), ImmutableSet.of("D", "E")));
+        // A relative importance statement between D and A joins their components.
+        PreferenceGraph importanceGraph = graphBuilder()
+                .addDomainValues("D", "d1", "d2")
+                .addConstraints("D", OptimalityConstraint.builder().addToClause("d2").build())
+                .addDomainValues("E", "e1", "e2")
+                .addConstraints("E", OptimalityConstraint.builder().addToClause("e1").build())
+                .addLessImportantVariables("D", "A")
+                .build();
+        Assert.assertEquals(ImmutableSet.copyOf(importanceGraph.connectedComponents(ImmutableSet.of())),
+                ImmutableSet.of(ImmutableSet.of("A", "B", "C", "D"), ImmutableSet.of("E")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingParent() {
+        graphBuilder().build().preferredValues("C", ImmutableMap.of("A", "a1"));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "conflicting preferences.*")
+    public void testConflictingPreferences() {
+        graphBuilder()
+                .addConstraints("C", OptimalityConstraint.builder().addToCondition("b1").addToClause("c2").build())
+                .build();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class,
+            expectedExceptionsMessageRegExp = "no applicable preference.*")
+    public void testMissingPreferences() {
+        PreferenceGraph.builder()
+                .addDomainValues("A", "a1", "a2")
+                .addDomainValues("B", "b1", "b2")
+                .addConstraints("A", OptimalityConstraint.builder().addToClause("a1").build())
+                .addParentNodes("B", "A")
+                .addConstraints("B", OptimalityConstraint.builder().addToCondition("a1").addToClause("b1").build())
+                .build();
+    }
+}
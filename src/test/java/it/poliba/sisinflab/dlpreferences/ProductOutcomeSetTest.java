@@ -0,0 +1,51 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import model.Outcome;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests for {@link ProductOutcomeSet}.
+ */
+public class ProductOutcomeSetTest {
+
+    @Test
+    public void testProduct() throws Exception {
+        ProductOutcomeSet product = new ProductOutcomeSet(
+                ImmutableList.of(
+                        ImmutableSet.of(
+                                new Outcome(ImmutableMap.of("A", "a1", "B", "b1")),
+                                new Outcome(ImmutableMap.of("A", "a2", "B", "b1"))),
+                        ImmutableSet.of(
+                                new Outcome(ImmutableMap.of("C", "c1")),
+                                new Outcome(ImmutableMap.of("C", "c2")),
+                                new Outcome(ImmutableMap.of("C", "c3")))),
+                ImmutableList.of(ImmutableSet.of("A", "B"), ImmutableSet.of("C")));
+        Assert.assertEquals(product.size(), 6);
+        Assert.assertEquals(product.count(), BigInteger.valueOf(6));
+        Set<Outcome> outcomes = new HashSet<>(product);
+        Assert.assertEquals(outcomes.size(), 6);
+        for (Outcome outcome : outcomes) {
+            Assert.assertTrue(product.contains(outcome));
+        }
+        Assert.assertTrue(product.contains(new Outcome(ImmutableMap.of("A", "a2", "B", "b1", "C", "c3"))));
+        Assert.assertFalse(product.contains(new Outcome(ImmutableMap.of("A", "a2", "B", "b2", "C", "c3"))));
+        Assert.assertFalse(product.contains(new Outcome(ImmutableMap.of("A", "a2", "B", "b1"))));
+    }
+
+    @Test
+    public void testEmptyFactor() throws Exception {
+        ProductOutcomeSet product = new ProductOutcomeSet(
+                ImmutableList.of(ImmutableSet.of(new Outcome(ImmutableMap.of("A", "a1"))), ImmutableSet.of()),
+                ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("C")));
+        Assert.assertTrue(product.isEmpty());
+        Assert.assertFalse(product.iterator().hasNext());
+    }
+}
@@ -0,0 +1,48 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link ReasonerPool}.
+ */
+public class ReasonerPoolTest {
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger disposed = new AtomicInteger();
+
+    private OWLReasoner newReasoner() {
+        created.incrementAndGet();
+        return (OWLReasoner) Proxy.newProxyInstance(OWLReasoner.class.getClassLoader(),
+                new Class<?>[]{OWLReasoner.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("dispose")) {
+                        disposed.incrementAndGet();
+                    }
+                    return null;
+                });
+    }
+
+    @Test
+    public void testReuse() {
+        created.set(0);
+        disposed.set(0);
+        ReasonerPool pool = new ReasonerPool(this::newReasoner, 1);
+        OWLReasoner warm = newReasoner();
+        pool.release(warm);
+        Assert.assertSame(pool.apply(reasoner -> reasoner), warm);
+        Assert.assertSame(pool.apply(reasoner -> reasoner), warm);
+        // A nested service needs a second reasoner, which exceeds the capacity when released.
+        pool.apply(outer -> pool.apply(inner -> {
+            Assert.assertNotSame(inner, outer);
+            return null;
+        }));
+        Assert.assertEquals(created.get(), 2);
+        Assert.assertEquals(disposed.get(), 1);
+        pool.clear();
+        Assert.assertEquals(disposed.get(), 2);
+        Assert.assertNotSame(pool.apply(reasoner -> reasoner), warm);
+    }
+}
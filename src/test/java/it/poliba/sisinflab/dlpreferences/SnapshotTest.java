@@ -0,0 +1,108 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import it.poliba.sisinflab.dlpreferences.except.SnapshotFormatException;
+import it.poliba.sisinflab.dlpreferences.sat.DimacsLiterals;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests for {@link Snapshot}.
+ */
+public class SnapshotTest {
+    private Path directory;
+
+    @BeforeMethod
+    public void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("snapshot");
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        PreferenceGraph graph = PreferenceGraph.builder()
+                .addDomainValues("A", "a1", "a2")
+                .addDomainValues("B", "b1", "b2")
+                .addConstraints("A", OptimalityConstraint.builder().addToClause("a1").build())
+                .addParentNodes("B", "A")
+                .addConstraints("B",
+                        OptimalityConstraint.builder().addToCondition("a1").addToClause("b1").build(),
+                        OptimalityConstraint.builder().addToCondition("a2").addToClause("b2").build())
+                .build();
+        Path source = Files.write(directory.resolve("spec.xml"), ImmutableList.of("<spec/>"));
+        Path snapshot = directory.resolve("net.snapshot");
+        List<DimacsLiterals> clauses = ImmutableList.of(DimacsLiterals.of(-1, 3), DimacsLiterals.of(2, 4));
+        try (Snapshot.Writer writer = Snapshot.Writer.create(snapshot, Snapshot.Kind.CPNET,
+                ImmutableMap.of(source, Snapshot.digest(source)))) {
+            graph.write(writer);
+            writer.writeClauses(clauses);
+            writer.commit();
+        }
+        try (Snapshot.Reader reader = Snapshot.Reader.open(snapshot)) {
+            Assert.assertEquals(reader.readKind(), Snapshot.Kind.CPNET);
+            Assert.assertEquals(reader.readSources().keySet(), ImmutableSet.of(source));
+            Assert.assertEquals(PreferenceGraph.read(reader).getNodes(), graph.getNodes());
+            List<DimacsLiterals> readClauses = reader.readClauses(4);
+            Assert.assertEquals(readClauses.size(), 2);
+            for (int i = 0; i < clauses.size(); i++) {
+                Assert.assertEquals(readClauses.get(i).stream().toArray(), clauses.get(i).stream().toArray());
+            }
+            reader.requireEnd();
+        }
+        Assert.assertTrue(Snapshot.isCurrent(snapshot));
+        Files.write(source, ImmutableList.of("<changed/>"));
+        Assert.assertFalse(Snapshot.isCurrent(snapshot));
+    }
+
+    @Test
+    public void testUncommittedWrite() throws Exception {
+        Path snapshot = directory.resolve("net.snapshot");
+        try (Snapshot.Writer writer = Snapshot.Writer.create(snapshot, Snapshot.Kind.CPNET, ImmutableMap.of())) {
+            writer.writeInt(0);
+        }
+        Assert.assertFalse(Files.exists(snapshot));
+    }
+
+    @Test(expectedExceptions = SnapshotFormatException.class)
+    public void testUnsupportedVersion() throws Exception {
+        Path snapshot = directory.resolve("net.snapshot");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshot))) {
+            out.writeInt(0x444C5053);
+            out.writeInt(Snapshot.VERSION + 1);
+        }
+        Snapshot.Reader.open(snapshot).close();
+    }
+
+    @Test(expectedExceptions = SnapshotFormatException.class)
+    public void testTruncatedSnapshot() throws Exception {
+        Path snapshot = directory.resolve("net.snapshot");
+        try (Snapshot.Writer writer = Snapshot.Writer.create(snapshot, Snapshot.Kind.CPNET, ImmutableMap.of())) {
+            writer.writeStrings(ImmutableList.of("A"));
+            writer.commit();
+        }
+        try (Snapshot.Reader reader = Snapshot.Reader.open(snapshot)) {
+            reader.readKind();
+            reader.readSources();
+            PreferenceGraph.read(reader);
+        }
+    }
+}
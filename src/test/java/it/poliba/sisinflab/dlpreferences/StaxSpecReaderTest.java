@@ -0,0 +1,104 @@
+package it.poliba.sisinflab.dlpreferences;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import it.poliba.sisinflab.dlpreferences.nusmv.NuSMVModelGenerator;
+import model.PreferenceSpecification;
+import org.testng.Assert;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+import translate.CPTheoryToSMVTranslator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Tests for {@link StaxSpecReader}.
+ */
+public class StaxSpecReaderTest {
+    private Path xmlSpec;
+
+    @Parameters({"hotel-cpnet-resource"})
+    public StaxSpecReaderTest(String xmlSpecRes) throws Exception {
+        xmlSpec = Paths.get(StaxSpecReaderTest.class.getResource(xmlSpecRes).toURI());
+    }
+
+    @Test
+    public void testGraph() throws Exception {
+        PreferenceGraph graph = StaxSpecReader.read(xmlSpec).get().getGraph();
+        Map<String, Set<String>> expected = ImmutableMap.<String, Set<String>>builder()
+                .put("W", ImmutableSet.of("Wy", "Wn"))
+                .put("R", ImmutableSet.of("Rl", "Rm", "Rs"))
+                .put("B", ImmutableSet.of("Bo", "Bn"))
+                .put("C", ImmutableSet.of("Cy", "Cn"))
+                .put("P", ImmutableSet.of("Pl", "Ps"))
+                .build();
+        Assert.assertEquals(graph.domainMap(), expected);
+        Assert.assertEquals(graph.preferredValues("R", ImmutableMap.of()), ImmutableSet.of("Rl"));
+        Assert.assertEquals(graph.preferredValues("B", ImmutableMap.of("R", "Rs")), ImmutableSet.of("Bo"));
+        Assert.assertEquals(graph.preferredValues("B", ImmutableMap.of("R", "Rm")), ImmutableSet.of("Bn"));
+    }
+
+    @Test
+    public void testBaseModel() throws Exception {
+        List<String> baseModel = StaxSpecReader.read(xmlSpec).get().getBaseModel();
+        Assert.assertEquals(baseModel.subList(0, 8), Arrays.asList(
+                "MODULE main",
+                "VAR",
+                "  W : {Wy,Wn};",
+                "  R : {Rl,Rm,Rs};",
+                "  B : {Bo,Bn};",
+                "  C : {Cy,Cn};",
+                "  P : {Pl,Ps};",
+                "IVAR"));
+        Assert.assertTrue(baseModel.contains("      R=Rs & chW=0 & chR=1 & chB=0 & chC=0 & chP=0 : Rm;"));
+        Assert.assertTrue(baseModel.contains("      B=Bn & R=Rs & chW=0 & chR=0 & chB=1 & chC=0 & chP=0 : Bo;"));
+        Assert.assertEquals(baseModel.stream().filter(line -> line.trim().equals("esac;")).count(), 5);
+    }
+
+    /**
+     * The streaming reader must produce exactly what the CRISNER fallback produces for the same specification.
+     */
+    @Test
+    public void testMatchesCrisner() throws Exception {
+        StaxSpecReader.Result result = StaxSpecReader.read(xmlSpec).get();
+        PreferenceSpecification prefSpec =
+                CPTheoryToSMVTranslator.parsePreferenceSpecification(xmlSpec.toAbsolutePath().toString());
+        // Same order as in CPNet: NuSMVModelGenerator.baseModel validates the statements of prefSpec.
+        List<String> crisnerBaseModel = NuSMVModelGenerator.baseModel(prefSpec);
+        PreferenceGraph crisnerGraph = PreferenceGraph.fromCrisnerSpec(prefSpec);
+        Assert.assertEquals(result.getBaseModel(), crisnerBaseModel);
+        Assert.assertEquals(result.getGraph().getNodes(), crisnerGraph.getNodes());
+        Assert.assertEquals(result.getGraph().getCompactOptimumSet(), crisnerGraph.getCompactOptimumSet());
+    }
+
+    @Test
+    public void testUnsupportedElements() throws Exception {
+        Path tcpnetSpec = Files.createTempFile("tcpnet", ".xml");
+        try {
+            Files.write(tcpnetSpec, Arrays.asList(
+                    "<PREFERENCE-SPECIFICATION>",
+                    "  <PREFERENCE-VARIABLE>",
+                    "    <VARIABLE-NAME>A</VARIABLE-NAME>",
+                    "    <DOMAIN-VALUE>a1</DOMAIN-VALUE>",
+                    "    <DOMAIN-VALUE>a2</DOMAIN-VALUE>",
+                    "  </PREFERENCE-VARIABLE>",
+                    "  <PREFERENCE-STATEMENT>",
+                    "    <STATEMENT-ID>prefA</STATEMENT-ID>",
+                    "    <PREFERENCE-VARIABLE>A</PREFERENCE-VARIABLE>",
+                    "    <PREFERENCE>a1:a2</PREFERENCE>",
+                    "    <REGARDLESS-OF>B</REGARDLESS-OF>",
+                    "  </PREFERENCE-STATEMENT>",
+                    "</PREFERENCE-SPECIFICATION>"));
+            Assert.assertEquals(StaxSpecReader.read(tcpnetSpec), Optional.empty());
+        } finally {
+            Files.delete(tcpnetSpec);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package it.poliba.sisinflab.dlpreferences.nusmv;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Tests for {@link VerificationCache}.
+ */
+public class VerificationCacheTest {
+
+    @Test
+    public void testKeys() throws Exception {
+        Path binary = Files.createTempFile("nusmv", ".bin");
+        try {
+            List<String> model = ImmutableList.of("MODULE main", "VAR", "x: boolean;");
+            String fingerprint = VerificationCache.fingerprint(binary);
+            Assert.assertEquals(VerificationCache.key(fingerprint, model), VerificationCache.key(fingerprint, model));
+            Assert.assertNotEquals(VerificationCache.key(fingerprint, model),
+                    VerificationCache.key(fingerprint, ImmutableList.of("MODULE main", "VAR", "y: boolean;")));
+            // Line boundaries are part of the model text.
+            Assert.assertNotEquals(VerificationCache.key(fingerprint, ImmutableList.of("ab", "c")),
+                    VerificationCache.key(fingerprint, ImmutableList.of("a", "bc")));
+            // Replacing the binary changes its fingerprint.
+            Files.write(binary, new byte[]{1, 2, 3});
+            Files.setLastModifiedTime(binary, FileTime.fromMillis(0));
+            Assert.assertNotEquals(VerificationCache.fingerprint(binary), fingerprint);
+        } finally {
+            Files.delete(binary);
+        }
+    }
+
+    @Test
+    public void testDiskTier() throws Exception {
+        Path directory = Files.createTempDirectory("nusmv-cache");
+        try {
+            VerificationCache cache = new VerificationCache(directory);
+            Assert.assertEquals(cache.get("a"), Optional.empty());
+            cache.put("a", true);
+            cache.put("b", false);
+            Assert.assertEquals(cache.get("a"), Optional.of(true));
+            // A new cache over the same directory, as in a later process.
+            VerificationCache laterCache = new VerificationCache(directory);
+            Assert.assertEquals(laterCache.get("a"), Optional.of(true));
+            Assert.assertEquals(laterCache.get("b"), Optional.of(false));
+            Assert.assertEquals(laterCache.get("c"), Optional.empty());
+        } finally {
+            for (String entry : ImmutableList.of("a", "b")) {
+                Files.deleteIfExists(directory.resolve(entry));
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testDiskCapacity() throws Exception {
+        Path directory = Files.createTempDirectory("nusmv-cache");
+        try {
+            VerificationCache cache = new VerificationCache(directory);
+            for (int i = 0; i <= VerificationCache.DISK_CAPACITY; i++) {
+                cache.put(Integer.toString(i), true);
+            }
+            try (Stream<Path> entries = Files.list(directory)) {
+                Assert.assertTrue(entries.count() <= VerificationCache.DISK_CAPACITY);
+            }
+            // Pruned entries are still in memory.
+            Assert.assertEquals(cache.get("0"), Optional.of(true));
+        } finally {
+            try (Stream<Path> entries = Files.list(directory)) {
+                for (Path entry : (Iterable<Path>) entries::iterator) {
+                    Files.delete(entry);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+}
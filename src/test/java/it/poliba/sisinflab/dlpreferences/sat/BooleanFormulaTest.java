@@ -0,0 +1,51 @@
+package it.poliba.sisinflab.dlpreferences.sat;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BooleanFormulaTest {
+
+    @Test
+    public void testCanonicalClauses() throws Exception {
+        BooleanFormula formula =
+                Stream.of(
+                        DimacsLiterals.of(3, -1, 2),
+                        DimacsLiterals.of(2, 3, -1),
+                        DimacsLiterals.of(-1, 2, 3, 2),
+                        DimacsLiterals.of(-7)
+                ).collect(BooleanFormula.toFormula());
+        List<DimacsLiterals> clauses = formula.clauses().collect(Collectors.toList());
+        Assert.assertEquals(clauses, Stream.of(
+                DimacsLiterals.of(-1, 2, 3),
+                DimacsLiterals.of(-7)
+        ).collect(Collectors.toList()));
+        Assert.assertEquals(formula.size(), 2);
+        Assert.assertEquals(formula.max(), 7);
+    }
+
+    @Test
+    public void testManyClauses() throws Exception {
+        BooleanFormula formula = BooleanFormula.empty();
+        for (int i = 1; i <= 1000; i++) {
+            formula.addClause(DimacsLiterals.of(i, -(i + 1)));
+            formula.addClause(DimacsLiterals.of(-(i + 1), i));
+        }
+        Assert.assertEquals(formula.size(), 1000);
+        Assert.assertEquals(formula.max(), 1001);
+        BooleanFormula copy = BooleanFormula.copyOf(formula);
+        copy.addLiteral(5);
+        Assert.assertEquals(copy.size(), 1001);
+        Assert.assertEquals(formula.size(), 1000);
+        BooleanFormula reversed = BooleanFormula.empty();
+        for (int i = 1000; i >= 1; i--) {
+            reversed.addClause(DimacsLiterals.of(i, -(i + 1)));
+        }
+        Assert.assertEquals(reversed, formula);
+        Assert.assertEquals(reversed.hashCode(), formula.hashCode());
+        Assert.assertNotEquals(copy, formula);
+    }
+}
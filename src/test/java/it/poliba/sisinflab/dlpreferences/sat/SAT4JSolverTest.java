@@ -5,6 +5,11 @@ import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -50,6 +55,243 @@ public class SAT4JSolverTest {
         };
     }
 
+    @Test
+    public void testExactlyOne() throws Exception {
+        SAT4JSolver groupSolver = new SAT4JSolver();
+        groupSolver.addExactlyOne(DimacsLiterals.of(1, 2, 3));
+        groupSolver.addExactlyOne(DimacsLiterals.of(4, 5));
+        // SAT problem: (NOT p1) AND (p2 OR p5)
+        BooleanFormula problem =
+                Stream.of(
+                        DimacsLiterals.of(-1),
+                        DimacsLiterals.of(2, 5)
+                ).collect(BooleanFormula.toFormula());
+        Set<DimacsLiterals> solution =
+                Stream.of(
+                        DimacsLiterals.of(-1, 2, -3, 4, -5),
+                        DimacsLiterals.of(-1, 2, -3, -4, 5),
+                        DimacsLiterals.of(-1, -2, 3, -4, 5)
+                ).collect(Collectors.toSet());
+        Set<DimacsLiterals> result =
+                groupSolver.solveSAT(problem)
+                        .collect(Collectors.toSet());
+        Assert.assertEquals(result, solution,
+                TestUtils.reportSetDifference(result, solution));
+        Assert.assertTrue(groupSolver.implies(BooleanFormula.empty(), DimacsLiterals.of(-2, -3)));
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        SAT4JSolver projectedSolver = new SAT4JSolver();
+        projectedSolver.setProjection(IntStream.of(1, 2));
+        // SAT problem: (p1 OR p2) AND (p1 OR p3 OR p4), with auxiliary variables p3 and p4
+        BooleanFormula problem =
+                Stream.of(
+                        DimacsLiterals.of(1, 2),
+                        DimacsLiterals.of(1, 3, 4)
+                ).collect(BooleanFormula.toFormula());
+        Set<DimacsLiterals> solution =
+                Stream.of(
+                        DimacsLiterals.of(1, 2),
+                        DimacsLiterals.of(1, -2),
+                        DimacsLiterals.of(-1, 2)
+                ).collect(Collectors.toSet());
+        Set<DimacsLiterals> result =
+                projectedSolver.solveSAT(problem)
+                        .collect(Collectors.toSet());
+        Assert.assertEquals(result, solution,
+                TestUtils.reportSetDifference(result, solution));
+        Assert.assertEquals(projectedSolver.solveSAT(problem).count(), solution.size());
+    }
+
+    @Test
+    public void testImplicationChecker() throws Exception {
+        SAT4JSolver groupSolver = new SAT4JSolver();
+        groupSolver.addExactlyOne(DimacsLiterals.of(1, 2, 3));
+        ClauseLog log = new ClauseLog();
+        ImplicationChecker checker = groupSolver.implicationChecker(log);
+        Assert.assertTrue(checker.test(DimacsLiterals.of(-1, -2)));
+        Assert.assertFalse(checker.test(DimacsLiterals.of(4, 5)));
+        log.append(DimacsLiterals.of(4, 5));
+        log.append(DimacsLiterals.of(-4, 1));
+        Assert.assertTrue(checker.test(DimacsLiterals.of(4, 5)));
+        Assert.assertTrue(checker.test(DimacsLiterals.of(1, 5)));
+        Assert.assertFalse(checker.test(DimacsLiterals.of(1)));
+        // Clauses appended concurrently are all published, in order of reservation.
+        IntStream.rangeClosed(6, 1005).parallel()
+                .forEach(variable -> log.append(DimacsLiterals.of(-variable, variable + 1)));
+        Assert.assertEquals(log.snapshot(), 1002);
+        Assert.assertEquals(log.max(), 1006);
+        Assert.assertEquals(log.toFormula(log.snapshot()).size(), 1002);
+        Assert.assertTrue(checker.test(DimacsLiterals.of(-6, 1006)));
+        Assert.assertFalse(checker.test(DimacsLiterals.of(6, -1006)));
+    }
+
+    @Test(dataProvider = "countingProvider")
+    public void testCountModels(BooleanFormula problem) throws Exception {
+        SAT4JSolver groupSolver = new SAT4JSolver(12);
+        groupSolver.addExactlyOne(DimacsLiterals.of(1, 2, 3));
+        groupSolver.addExactlyOne(DimacsLiterals.of(4, 5, 6, 7));
+        long expected = groupSolver.solveSAT(problem).count();
+        Assert.assertEquals(groupSolver.countModels(problem), BigInteger.valueOf(expected));
+        // Problems with few models are estimated exactly.
+        if (expected <= 64) {
+            Assert.assertEquals(groupSolver.estimateModels(problem), BigInteger.valueOf(expected));
+        }
+    }
+
+    /**
+     * A problem with 2^12 models must be estimated within a small factor.
+     */
+    @Test
+    public void testEstimateModels() throws Exception {
+        BooleanFormula problem = IntStream.rangeClosed(1, 12)
+                .mapToObj(literal -> DimacsLiterals.of(literal, -literal))
+                .collect(BooleanFormula.toFormula());
+        BigInteger estimate = solver.estimateModels(problem);
+        Assert.assertTrue(estimate.compareTo(BigInteger.valueOf(1 << 9)) >= 0, estimate.toString());
+        Assert.assertTrue(estimate.compareTo(BigInteger.valueOf(1 << 15)) <= 0, estimate.toString());
+    }
+
+    @Test(dataProvider = "countingProvider")
+    public void testPreprocessing(BooleanFormula problem) throws Exception {
+        SAT4JSolver groupSolver = new SAT4JSolver(12);
+        groupSolver.addExactlyOne(DimacsLiterals.of(1, 2, 3));
+        groupSolver.setProjection(IntStream.rangeClosed(1, 8));
+        Set<DimacsLiterals> result = groupSolver.solveSAT(problem).collect(Collectors.toSet());
+        groupSolver.setPreprocessing(false);
+        Set<DimacsLiterals> expected = groupSolver.solveSAT(problem).collect(Collectors.toSet());
+        Assert.assertEquals(result, expected, TestUtils.reportSetDifference(result, expected));
+        Assert.assertEquals(groupSolver.isSatisfiable(problem), !expected.isEmpty());
+    }
+
+    @Test(dataProvider = "countingProvider")
+    public void testProfiles(BooleanFormula problem) throws Exception {
+        SAT4JSolver groupSolver = new SAT4JSolver(12);
+        groupSolver.addExactlyOne(DimacsLiterals.of(1, 2, 3));
+        Set<DimacsLiterals> expected = groupSolver.solveSAT(problem).collect(Collectors.toSet());
+        Optional<DimacsLiterals> expectedOptimum = groupSolver.solvePseudoBoolean(problem, IntStream.of(3, 1, 2));
+        Optional<DimacsLiterals> expectedBackbone = groupSolver.backbone(problem);
+        for (SolverProfile profile : Arrays.asList(SolverProfile.DEFAULT, SolverProfile.GLUCOSE,
+                SolverProfile.portfolio(SolverProfile.LIGHT, SolverProfile.GLUCOSE))) {
+            for (SAT4JSolver.Usage usage : SAT4JSolver.Usage.values()) {
+                groupSolver.setProfile(usage, profile);
+            }
+            Set<DimacsLiterals> result = groupSolver.solveSAT(problem).collect(Collectors.toSet());
+            Assert.assertEquals(result, expected, TestUtils.reportSetDifference(result, expected));
+            Assert.assertEquals(groupSolver.isSatisfiable(problem), !expected.isEmpty());
+            Assert.assertEquals(groupSolver.backbone(problem), expectedBackbone);
+            // Optima may differ, but not their objective value.
+            Optional<DimacsLiterals> optimum = groupSolver.solvePseudoBoolean(problem, IntStream.of(3, 1, 2));
+            Assert.assertEquals(optimum.isPresent(), expectedOptimum.isPresent());
+            optimum.ifPresent(model -> Assert.assertEquals(
+                    model.stream().filter(literal -> literal > 0 && literal <= 3).findFirst(),
+                    expectedOptimum.get().stream().filter(literal -> literal > 0 && literal <= 3).findFirst()));
+        }
+    }
+
+    @Test(dataProvider = "countingProvider")
+    public void testBackbone(BooleanFormula problem) throws Exception {
+        SAT4JSolver groupSolver = new SAT4JSolver(12);
+        groupSolver.addExactlyOne(DimacsLiterals.of(1, 2, 3));
+        Set<DimacsLiterals> models = groupSolver.solveSAT(problem).collect(Collectors.toSet());
+        Set<Integer> expected = IntStream.rangeClosed(-12, 12)
+                .filter(literal -> models.stream().allMatch(model -> model.stream().anyMatch(l -> l == literal)))
+                .boxed()
+                .collect(Collectors.toSet());
+        Set<Integer> result = groupSolver.backbone(problem)
+                .map(backbone -> backbone.stream().boxed().collect(Collectors.toSet()))
+                .orElse(null);
+        if (models.isEmpty()) {
+            Assert.assertNull(result);
+        } else {
+            Assert.assertEquals(result, expected);
+        }
+    }
+
+    @Test
+    public void testPreprocessingStatistics() throws Exception {
+        // (p1) AND (NOT p1 OR p2 OR p3) AND (p3 OR p4) AND (p3 OR p4 OR p5) AND (NOT p3 OR p4 OR p6)
+        BooleanFormula problem =
+                Stream.of(
+                        DimacsLiterals.of(1),
+                        DimacsLiterals.of(-1, 2, 3),
+                        DimacsLiterals.of(3, 4),
+                        DimacsLiterals.of(3, 4, 5),
+                        DimacsLiterals.of(-3, 4, 6)
+                ).collect(BooleanFormula.toFormula());
+        Preprocessor.Result result = new Preprocessor().preprocess(problem);
+        Assert.assertEquals(result.getUnitCount(), 1);
+        Assert.assertEquals(result.getSubsumedCount(), 1);
+        Assert.assertEquals(result.getStrengthenedCount(), 1);
+        Assert.assertEquals(result.getFormula(),
+                Stream.of(
+                        DimacsLiterals.of(1),
+                        DimacsLiterals.of(2, 3),
+                        DimacsLiterals.of(3, 4),
+                        DimacsLiterals.of(4, 6)
+                ).collect(BooleanFormula.toFormula()));
+        // After simplification, variables 2, 3, 4 and 6 occur only positively.
+        Preprocessor.Result eliminated = new Preprocessor(variable -> true).preprocess(problem);
+        Assert.assertEquals(eliminated.getPureLiteralCount(), 4);
+        Assert.assertEquals(eliminated.getFormula(),
+                IntStream.of(1, 2, 3, 4, 6)
+                        .mapToObj(DimacsLiterals::of)
+                        .collect(BooleanFormula.toFormula()));
+    }
+
+    @DataProvider
+    public Object[][] countingProvider() {
+        Random random = new Random(42);
+        return IntStream.range(0, 20)
+                .mapToObj(i -> IntStream.range(0, 4 + i)
+                        .mapToObj(j -> DimacsLiterals.of(random.ints(3, 1, 13)
+                                .map(literal -> random.nextBoolean() ? literal : -literal)
+                                .toArray()))
+                        .collect(BooleanFormula.toFormula()))
+                .map(problem -> new Object[]{problem})
+                .toArray(Object[][]::new);
+    }
+
+    /**
+     * Without a projection, models must assign every variable, including those absent from the problem.
+     */
+    @Test
+    public void testSolveSATWithUnconstrainedVariables() throws Exception {
+        SAT4JSolver fixedSolver = new SAT4JSolver(3);
+        // SAT problem: p1 AND (p1 OR p2), where p3 does not occur
+        BooleanFormula problem =
+                Stream.of(
+                        DimacsLiterals.of(1),
+                        DimacsLiterals.of(1, 2)
+                ).collect(BooleanFormula.toFormula());
+        Set<DimacsLiterals> solution =
+                Stream.of(
+                        DimacsLiterals.of(1, 2, 3),
+                        DimacsLiterals.of(1, 2, -3),
+                        DimacsLiterals.of(1, -2, 3),
+                        DimacsLiterals.of(1, -2, -3)
+                ).collect(Collectors.toSet());
+        Set<DimacsLiterals> result =
+                fixedSolver.solveSAT(problem)
+                        .collect(Collectors.toSet());
+        Assert.assertEquals(result, solution,
+                TestUtils.reportSetDifference(result, solution));
+    }
+
+    /**
+     * A problem with 2^40 models must yield its first model without enumerating the others.
+     */
+    @Test(timeOut = 10000)
+    public void testSolveSATIsLazy() throws Exception {
+        BooleanFormula problem = IntStream.rangeClosed(1, 40)
+                .mapToObj(literal -> DimacsLiterals.of(literal, -literal))
+                .collect(BooleanFormula.toFormula());
+        try (Stream<DimacsLiterals> models = solver.solveSAT(problem)) {
+            Assert.assertEquals(models.limit(3).count(), 3);
+        }
+    }
+
     @Test(dataProvider = "pseudoBooleanProvider")
     public void testSolvePseudoBoolean(BooleanFormula constraints,
                                        IntStream objective,
@@ -58,6 +300,21 @@ public class SAT4JSolverTest {
         Assert.assertEquals(result, solution);
     }
 
+    @Test
+    public void testBestModels() throws Exception {
+        SAT4JSolver groupSolver = new SAT4JSolver();
+        groupSolver.addExactlyOne(DimacsLiterals.of(1, 2, 3));
+        // Objective: min: 3*p1 + 1*p2 + 2*p3
+        List<DimacsLiterals> result = groupSolver.bestModels(
+                BooleanFormula.empty(), IntStream.of(3, 1, 2), 5);
+        Assert.assertEquals(result, Arrays.asList(
+                DimacsLiterals.of(-1, 2, -3),
+                DimacsLiterals.of(-1, -2, 3),
+                DimacsLiterals.of(1, -2, -3)));
+        Assert.assertEquals(groupSolver.bestModels(
+                BooleanFormula.empty(), IntStream.of(3, 1, 2), 1), result.subList(0, 1));
+    }
+
     @DataProvider
     public Object[][] pseudoBooleanProvider() {
         // Problem 1